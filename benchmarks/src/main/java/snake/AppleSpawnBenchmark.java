@@ -0,0 +1,57 @@
+package snake;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures placing an apple the way GameEngine does, by picking a random free
+ * cell and looking up its Coordinates, with different fractions of the board
+ * covered. The time should not depend on how full the board is.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppleSpawnBenchmark {
+    private static final int GRID_SIZE = 100;
+    
+    @Param({"0.0", "0.5", "0.9", "0.99"})
+    public double fill;
+    
+    private FreeCellSet freeCells;
+    private CoordinatesCache cache;
+    private GameRandom random;
+    
+    @Setup
+    public void setUp() {
+        int cells = GRID_SIZE * GRID_SIZE;
+        freeCells = new FreeCellSet(cells);
+        cache = CoordinatesCache.forGrid(GRID_SIZE, GRID_SIZE);
+        random = new GameRandom(1);
+        //Cover cells at random until the board is as full as required
+        Random filler = new Random(2);
+        while (freeCells.size() > cells - (int) (cells * fill)) {
+            freeCells.remove(filler.nextInt(cells));
+        }
+    }
+    
+    @Benchmark
+    public Coordinates createApple() {
+        int cell = freeCells.random(random);
+        return cache.get(cell % GRID_SIZE, cell / GRID_SIZE);
+    }
+}
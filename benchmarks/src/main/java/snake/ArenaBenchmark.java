@@ -0,0 +1,57 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole tick of an arena full of bots, with the moves picked on
+ * one thread and on every available thread. Snakes keep dying and starting
+ * again across iterations, so the number alive stays roughly the same.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArenaBenchmark {
+    private static final int GRID_SIZE = 1000;
+    
+    @Param({"100", "1000"})
+    public int snakes;
+    
+    @Param({"1", "0"})
+    public int threads;
+    
+    private Arena arena;
+    
+    @Setup
+    public void setUp() {
+        //No threads means as many as there are processors
+        int count = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        arena = new Arena(GRID_SIZE, GRID_SIZE, snakes, snakes / 2, GameEngine.DEFAULT_START_LENGTH, 1, count, false);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        arena.shutdown();
+    }
+    
+    @Benchmark
+    public long tick() {
+        arena.tick();
+        return arena.getApplesEaten();
+    }
+}
@@ -0,0 +1,48 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole tick of an autopilot game, choosing a direction and then
+ * stepping the game. Games run on across iterations, dying and starting again,
+ * so the results cover snakes of every length each autopilot reaches.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutopilotBenchmark {
+    private static final int GRID_SIZE = 50;
+    
+    @Param({"GREEDY", "PATH", "HAMILTONIAN", "ROLLOUT"})
+    public AutopilotStrategy strategy;
+    
+    private GameEngine engine;
+    private Autopilot autopilot;
+    
+    @Setup
+    public void setUp() {
+        engine = new GameEngine(GRID_SIZE, GRID_SIZE, 1);
+        autopilot = strategy.create(GRID_SIZE, GRID_SIZE);
+    }
+    
+    @Benchmark
+    public StepResult tick() {
+        engine.changeDirection(autopilot.nextDirection(engine));
+        return engine.step();
+    }
+}
@@ -0,0 +1,37 @@
+package snake;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler so that the allocation rate of
+ * every benchmark is reported alongside its time, and saves the results as
+ * JSON so that they can be kept as a baseline and compared against later runs.
+ * Any of the usual JMH command line options can be given, for example a regular
+ * expression to pick which benchmarks to run.
+ * @author Ashley Allen
+ */
+public class BenchmarkRunner {
+    
+    /**
+     * @param args the JMH command line options
+     * @throws CommandLineOptionException if the options cannot be parsed
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse("benchmarks.json"))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,32 @@
+package snake;
+
+/**
+ * Sets up games in the states the benchmarks need
+ * @author Ashley Allen
+ */
+final class Boards {
+    
+    private Boards() {
+    }
+    
+    /**
+     * Plays a game with the Hamiltonian autopilot, which never dies, until the
+     * snake covers the specified fraction of the grid
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     * @param fill the fraction of the grid the snake should cover, from 0 to
+     * just under 1
+     * @param seed the seed for placing apples
+     * @return the game with a snake of the required length
+     */
+    static GameEngine grow(int gridWidth, int gridHeight, double fill, long seed) {
+        GameEngine engine = new GameEngine(gridWidth, gridHeight, seed);
+        Autopilot autopilot = new HamiltonianAutopilot(gridWidth, gridHeight);
+        int length = Math.max(engine.getSnake().getLength(), (int) (gridWidth * gridHeight * fill));
+        while (engine.getSnake().getLength() < length) {
+            engine.changeDirection(autopilot.nextDirection(engine));
+            engine.step();
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,74 @@
+package snake;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures checking whether the snake is in a cell, which is what collision
+ * detection, rendering and the autopilots spend much of their time doing, on
+ * boards with different amounts covered by the snake.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final int GRID_SIZE = 50;
+    private static final int PROBES = 1024;
+    
+    @Param({"0.1", "0.5", "0.9"})
+    public double fill;
+    
+    private Snake snake;
+    private final int[] probeX = new int[PROBES];
+    private final int[] probeY = new int[PROBES];
+    
+    @Setup
+    public void setUp() {
+        snake = Boards.grow(GRID_SIZE, GRID_SIZE, fill, 1).getSnake();
+        //Include cells just outside the grid like a snake running into a wall
+        Random random = new Random(2);
+        for (int i = 0; i < PROBES; i++) {
+            probeX[i] = random.nextInt(GRID_SIZE + 2) - 1;
+            probeY[i] = random.nextInt(GRID_SIZE + 2) - 1;
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void isOccupied(Blackhole bh) {
+        for (int i = 0; i < PROBES; i++) {
+            bh.consume(snake.isOccupied(probeX[i], probeY[i]));
+        }
+    }
+    
+    @Benchmark
+    public int neighboursOfHead() {
+        //The check every autopilot makes before choosing a direction
+        int x = snake.getBodyX(0);
+        int y = snake.getBodyY(0);
+        int free = 0;
+        for (Direction dir : Direction.values()) {
+            if (!snake.isOccupied(x + dir.getDx(), y + dir.getDy())) {
+                free++;
+            }
+        }
+        return free;
+    }
+}
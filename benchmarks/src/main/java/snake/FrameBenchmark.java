@@ -0,0 +1,59 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a frame of normal play with the pixel renderer on large boards,
+ * one tick and then drawing only what changed in the snapshot it published.
+ * The canvas renderer cannot be measured this way offscreen, since without the
+ * JavaFX thread to render them its drawing commands would pile up.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dprism.order=sw")
+public class FrameBenchmark {
+    private static final int CELL_SIZE = 2;
+    
+    @Param({"500", "1000"})
+    public int gridSize;
+    
+    private GameSimulation simulation;
+    private PixelRenderer renderer;
+    
+    @Setup
+    public void setUp() {
+        simulation = new GameSimulation(new GameEngine(gridSize, gridSize, 1), 20);
+        simulation.toggleAuto();
+        //The Hamiltonian autopilot takes constant time so the frame is
+        //mostly drawing
+        simulation.nextStrategy();
+        renderer = new PixelRenderer(gridSize, gridSize, CELL_SIZE);
+    }
+    
+    @Benchmark
+    public void frame() {
+        simulation.tick();
+        simulation.publishSnapshot();
+        GameSnapshot snapshot = simulation.getSnapshots().acquire();
+        try {
+            renderer.render(snapshot, snapshot.getTickNanoTime());
+        } finally {
+            simulation.getSnapshots().release();
+        }
+    }
+}
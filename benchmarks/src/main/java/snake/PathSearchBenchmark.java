@@ -0,0 +1,48 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single breadth first search for the apple on boards of different
+ * sizes and with different amounts covered by the snake. The board does not
+ * change so every search does the same work.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathSearchBenchmark {
+    @Param({"20", "50", "100"})
+    public int gridSize;
+    
+    @Param({"0.1", "0.5"})
+    public double fill;
+    
+    private GameEngine engine;
+    private Path path;
+    
+    @Setup
+    public void setUp() {
+        engine = Boards.grow(gridSize, gridSize, fill, 1);
+        path = new Path(gridSize, gridSize);
+    }
+    
+    @Benchmark
+    public boolean search() {
+        return path.search(engine);
+    }
+}
@@ -0,0 +1,70 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import javafx.scene.canvas.Canvas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures redrawing the whole board with each renderer, to an offscreen
+ * canvas or image. Nothing is shown so this is the cost of the work done on
+ * the JavaFX thread rather than of the pixels reaching the screen. Because
+ * the redraw starts by filling the whole canvas the canvas throws away the
+ * commands from the previous redraw, so they do not build up.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dprism.order=sw")
+public class RenderBenchmark {
+    private static final int CELL_SIZE = 8;
+    
+    @Param({"50", "100"})
+    public int gridSize;
+    
+    @Param({"0.1", "0.9"})
+    public double fill;
+    
+    @Param({"canvas", "pixel"})
+    public String renderer;
+    
+    private GameSimulation simulation;
+    private GameSnapshot snapshot;
+    private GameRenderer gameRenderer;
+    
+    @Setup
+    public void setUp() {
+        simulation = new GameSimulation(Boards.grow(gridSize, gridSize, fill, 1), 20);
+        snapshot = simulation.getSnapshots().acquire();
+        if (renderer.equals("pixel")) {
+            gameRenderer = new PixelRenderer(gridSize, gridSize, CELL_SIZE);
+        } else {
+            Canvas canvas = new Canvas(gridSize * CELL_SIZE, gridSize * CELL_SIZE);
+            gameRenderer = new CanvasRenderer(canvas.getGraphicsContext2D(), gridSize, gridSize, CELL_SIZE);
+        }
+    }
+    
+    @TearDown
+    public void tearDown() {
+        simulation.getSnapshots().release();
+    }
+    
+    @Benchmark
+    public void drawGame() {
+        gameRenderer.invalidate();
+        gameRenderer.render(snapshot, snapshot.getTickNanoTime());
+    }
+}
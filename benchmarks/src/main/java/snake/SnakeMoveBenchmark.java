@@ -0,0 +1,58 @@
+package snake;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures moving a snake of various lengths. The snake goes round and round a
+ * grid two rows high and exactly as wide as the snake is long so it never
+ * leaves the grid or runs into itself, however many times it is moved.
+ * @author Ashley Allen
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnakeMoveBenchmark {
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int length;
+    
+    private Snake snake;
+    
+    @Setup(Level.Iteration)
+    public void setUp() {
+        //Lay the snake along the top row with its head at the right hand end
+        snake = new Snake(new Coordinates(length - 1, 0), length, Direction.EAST, length, 2);
+    }
+    
+    @Benchmark
+    public Snake move() {
+        //Turn at either end of the grid to stay on the loop
+        int x = snake.getBodyX(0);
+        Direction dir = snake.getDirection();
+        if (dir == Direction.EAST && x == length - 1) {
+            snake.changeDirection(Direction.SOUTH);
+        } else if (dir == Direction.SOUTH) {
+            snake.changeDirection(Direction.WEST);
+        } else if (dir == Direction.WEST && x == 0) {
+            snake.changeDirection(Direction.NORTH);
+        } else if (dir == Direction.NORTH) {
+            snake.changeDirection(Direction.EAST);
+        }
+        snake.move();
+        return snake;
+    }
+}
@@ -0,0 +1,711 @@
+package snake;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A game with many snakes and many apples on one grid. Snakes that are not
+ * controlled by a player are steered by a simple bot, and a snake that dies
+ * is taken off the grid and started again somewhere else.
+ *
+ * What is in each cell is kept in one grid shared by every snake, so whether a
+ * move is safe is a single lookup rather than a search through every other
+ * snake. Each tick has two phases. First every snake picks its move, in
+ * parallel, from the state left by the last tick, which nothing changes
+ * until every snake has picked. Then the moves are made one snake at a time in
+ * order, so the result of a tick never depends on how many threads were used
+ * or how they were scheduled.
+ * @author Ashley Allen
+ */
+public class Arena {
+    //The player in a single player arena is always the first snake
+    public static final int PLAYER = 0;
+    
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    //Below this many snakes a task picks their moves itself instead of
+    //splitting, and below twice this many no other threads are used at all
+    private static final int SNAKES_PER_TASK = 32;
+    
+    //The number of random cells to try when placing an apple or a snake
+    private static final int MAX_PLACE_TRIES = 64;
+    
+    private final int gridWidth, gridHeight;
+    private final int startLength;
+    
+    //What is in each cell indexed by y * width + x. Zero is an empty cell,
+    //n + 1 a part of snake n and -(n + 1) apple n.
+    private final int[] cells;
+    
+    private final Snake[] snakes;
+    private final boolean[] alive;
+    private final int[] scores;
+    
+    //The cells with apples in them, in no particular order
+    private final int[] apples;
+    private int appleCount = 0;
+    
+    //The cell each snake's head moves into this tick or -1 if it leaves the
+    //grid, written by the first phase and read by the second, and which
+    //snakes die this tick
+    private final int[] targets;
+    private final boolean[] dying;
+    
+    //The apple each bot is heading for, kept until it is eaten so that the
+    //apples only need searching when a bot needs a new one, or -1 for none
+    private final int[] goals;
+    
+    //The number of heads moving into each cell this tick, kept in a hash table
+    //of the cells rather than a grid so that clearing it costs nothing more
+    //than the number of snakes
+    private final int[] claimCells;
+    private final int[] claimCounts;
+    private final int claimMask;
+    
+    //Which snakes are steered by players rather than bots, and the turns
+    //queued for each of them by input
+    private final boolean[] controlled;
+    private final DirectionQueue[] turns;
+    
+    //The cells whose contents changed during the last tick, in the order
+    //they were changed and possibly more than once
+    private int[] changes = new int[64];
+    private int changeCount = 0;
+    
+    private final GameRandom random;
+    private final CoordinatesCache cache;
+    private final ForkJoinPool pool;
+    
+    private long ticks = 0;
+    private long deaths = 0;
+    private long applesEaten = 0;
+    
+    /**
+     * Creates a new Arena and places every snake and apple on it
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     * @param snakeCount the number of snakes including the player
+     * @param appleCount the number of apples kept on the grid
+     * @param startLength the length of each new snake
+     * @param seed the seed for the random number generator that places
+     * snakes and apples
+     * @param threads the number of threads to pick moves on
+     * @param player true if the first snake is steered by queueTurn rather
+     * than by a bot
+     */
+    public Arena(int gridWidth, int gridHeight, int snakeCount, int appleCount, int startLength, long seed, int threads, boolean player) {
+        if ((long) gridWidth * gridHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("An arena of " + gridWidth + "x" + gridHeight + " is too large");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.startLength = startLength;
+        this.cells = new int[gridWidth * gridHeight];
+        this.snakes = new Snake[snakeCount];
+        this.alive = new boolean[snakeCount];
+        this.scores = new int[snakeCount];
+        this.apples = new int[appleCount];
+        this.targets = new int[snakeCount];
+        this.dying = new boolean[snakeCount];
+        this.goals = new int[snakeCount];
+        this.controlled = new boolean[snakeCount];
+        this.turns = new DirectionQueue[snakeCount];
+        int claimSize = Integer.highestOneBit(Math.max(1, snakeCount)) << 2;
+        this.claimCells = new int[claimSize];
+        this.claimCounts = new int[claimSize];
+        this.claimMask = claimSize - 1;
+        this.random = new GameRandom(seed);
+        this.cache = CoordinatesCache.forGrid(gridWidth, gridHeight);
+        this.pool = threads > 1 && snakeCount >= SNAKES_PER_TASK * 2 ? new ForkJoinPool(threads) : null;
+        
+        for (int id = 0; id < snakeCount; id++) {
+            placeSnake(id);
+        }
+        for (int i = 0; i < appleCount; i++) {
+            placeApple();
+        }
+        if (player && snakeCount > 0) {
+            setControlled(PLAYER, true);
+        }
+    }
+    
+    /**
+     * Runs a single tick, moving every snake that is alive one cell
+     */
+    public void tick() {
+        ticks++;
+        changeCount = 0;
+        
+        //The players' turns are made here rather than with the bots so that
+        //the queues are only ever read by the ticking thread
+        for (int id = 0; id < snakes.length; id++) {
+            if (controlled[id] && alive[id]) {
+                Direction dir;
+                while ((dir = turns[id].poll()) != null) {
+                    if (snakes[id].canTurn(dir)) {
+                        snakes[id].changeDirection(dir);
+                        break;
+                    }
+                }
+            }
+        }
+        
+        //Pick every move from the grid as the last tick left it
+        if (pool != null) {
+            pool.invoke(new ProposeTask(0, snakes.length));
+        } else {
+            propose(0, snakes.length);
+        }
+        commit();
+    }
+    
+    /**
+     * Picks the move of each snake in a range and works out which cell its
+     * head will move into. Only the snakes in the range are changed, so
+     * ranges can be picked at the same time on different threads.
+     * @param from the first snake
+     * @param to one past the last snake
+     */
+    private void propose(int from, int to) {
+        for (int id = from; id < to; id++) {
+            if (!alive[id]) {
+                continue;
+            }
+            Snake snake = snakes[id];
+            if (!controlled[id]) {
+                snake.changeDirection(chooseDirection(id, snake));
+            }
+            long head = Coordinates.step(snake.getBodyPacked(0), snake.getDirection());
+            targets[id] = cellAt(Coordinates.x(head), Coordinates.y(head));
+        }
+    }
+    
+    /**
+     * Makes every move picked for this tick. A snake dies if its head leaves
+     * the grid, moves into the same cell as another head, or moves into a
+     * part of any snake other than the end of a tail that is moving away this
+     * tick. Each of those only depends on the grid as the last tick left it,
+     * so no snake's fate depends on the order snakes are looked at in.
+     */
+    private void commit() {
+        Arrays.fill(claimCells, -1);
+        for (int id = 0; id < snakes.length; id++) {
+            if (alive[id] && targets[id] >= 0) {
+                claimCounts[claim(targets[id])]++;
+            }
+        }
+        for (int id = 0; id < snakes.length; id++) {
+            if (alive[id]) {
+                int target = targets[id];
+                dying[id] = target < 0 || claimCounts[claim(target)] > 1 || !isFree(target);
+            }
+        }
+        
+        //Take the dead snakes off the grid and move the tails of the rest,
+        //freeing every cell a head is about to move into
+        for (int id = 0; id < snakes.length; id++) {
+            if (!alive[id]) {
+                continue;
+            }
+            Snake snake = snakes[id];
+            if (dying[id]) {
+                for (int i = 0; i < snake.getLength(); i++) {
+                    clearCell(cellAt(snake.getBodyX(i), snake.getBodyY(i)), id);
+                }
+                alive[id] = false;
+                deaths++;
+            } else if (!snake.isGrowing()) {
+                int last = snake.getLength() - 1;
+                clearCell(cellAt(snake.getBodyX(last), snake.getBodyY(last)), id);
+            }
+        }
+        
+        //Move the heads, eating any apples they land on
+        int eaten = 0;
+        for (int id = 0; id < snakes.length; id++) {
+            if (!alive[id]) {
+                continue;
+            }
+            int target = targets[id];
+            snakes[id].move();
+            if (cells[target] < 0) {
+                removeApple(target);
+                snakes[id].eatApple();
+                scores[id]++;
+                eaten++;
+            }
+            setCell(target, id + 1);
+        }
+        applesEaten += eaten;
+        
+        //Replace the apples and snakes only once everything has moved so that
+        //nothing is placed in a cell that a head has just moved into
+        for (int i = 0; i < eaten; i++) {
+            placeApple();
+        }
+        for (int id = 0; id < snakes.length; id++) {
+            if (!alive[id]) {
+                placeSnake(id);
+            }
+        }
+    }
+    
+    /**
+     * Finds the slot in the claim table for a cell, adding the cell with no
+     * claims if it is not there yet
+     * @param cell the index of the cell
+     * @return the index of the slot
+     */
+    private int claim(int cell) {
+        int slot = (cell * 0x9E3779B9) >>> 7 & claimMask;
+        while (claimCells[slot] != cell) {
+            if (claimCells[slot] == -1) {
+                claimCells[slot] = cell;
+                claimCounts[slot] = 0;
+                break;
+            }
+            slot = (slot + 1) & claimMask;
+        }
+        return slot;
+    }
+    
+    /**
+     * Chooses where a bot goes next, which is the free neighbouring cell
+     * closest to the apple it is heading for. A bot heads for whichever apple
+     * was nearest when it last had to pick one.
+     * @param id the number of the snake
+     * @param snake the snake the bot steers
+     * @return the direction to turn in
+     */
+    private Direction chooseDirection(int id, Snake snake) {
+        int headX = snake.getBodyX(0);
+        int headY = snake.getBodyY(0);
+        if (goals[id] < 0 || cells[goals[id]] >= 0) {
+            goals[id] = -1;
+            int nearest = Integer.MAX_VALUE;
+            for (int i = 0; i < appleCount; i++) {
+                int distance = Math.abs(apples[i] % gridWidth - headX) + Math.abs(apples[i] / gridWidth - headY);
+                if (distance < nearest) {
+                    nearest = distance;
+                    goals[id] = apples[i];
+                }
+            }
+        }
+        int appleX = goals[id] >= 0 ? goals[id] % gridWidth : headX;
+        int appleY = goals[id] >= 0 ? goals[id] / gridWidth : headY;
+        
+        Direction best = snake.getDirection();
+        int bestDistance = Integer.MAX_VALUE;
+        for (Direction dir : DIRECTIONS) {
+            if (dir == snake.getDirection().opposite()) {
+                continue;
+            }
+            int x = headX + dir.getDx();
+            int y = headY + dir.getDy();
+            int cell = cellAt(x, y);
+            if (cell < 0 || !isFree(cell)) {
+                continue;
+            }
+            int distance = Math.abs(x - appleX) + Math.abs(y - appleY);
+            if (distance < bestDistance) {
+                best = dir;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Checks whether a head can move into a cell this tick. The end of a tail
+     * counts as free because it moves away unless its snake is growing.
+     * @param cell the index of the cell
+     * @return true if the cell is empty, an apple or a tail that is moving
+     */
+    private boolean isFree(int cell) {
+        int value = cells[cell];
+        if (value <= 0) {
+            return true;
+        }
+        Snake owner = snakes[value - 1];
+        int last = owner.getLength() - 1;
+        return !owner.isGrowing() && cellAt(owner.getBodyX(last), owner.getBodyY(last)) == cell;
+    }
+    
+    /**
+     * Empties a cell if it still belongs to the specified snake
+     * @param cell the index of the cell
+     * @param id the snake
+     */
+    private void clearCell(int cell, int id) {
+        if (cell >= 0 && cells[cell] == id + 1) {
+            setCell(cell, 0);
+        }
+    }
+    
+    /**
+     * Starts a snake again in a random empty part of the grid with room to
+     * move ahead of it. If no room is found it stays dead until a later tick.
+     * @param id the snake to place
+     */
+    private void placeSnake(int id) {
+        for (int i = 0; i < MAX_PLACE_TRIES; i++) {
+            int cell = random.nextInt(cells.length);
+            Direction dir = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            int x = cell % gridWidth;
+            int y = cell / gridWidth;
+            if (isRoomFor(x, y, dir)) {
+                //The shared grid says where every snake is, so a snake does
+                //not need a grid of its own and is reused when it starts again
+                Snake snake = snakes[id];
+                if (snake == null) {
+                    snake = new Snake(cache.get(x, y), startLength, dir, gridWidth, gridHeight, false);
+                    snakes[id] = snake;
+                } else {
+                    snake.reset(cache.get(x, y), startLength, dir);
+                }
+                for (int j = 0; j < startLength; j++) {
+                    setCell(cellAt(snake.getBodyX(j), snake.getBodyY(j)), id + 1);
+                }
+                goals[id] = -1;
+                alive[id] = true;
+                scores[id] = 0;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Checks whether a new snake fits with its head in a cell, along with
+     * the cell in front of it
+     * @param x the x coordinate of the head
+     * @param y the y coordinate of the head
+     * @param dir the direction the snake would move in
+     * @return true if every cell needed is empty
+     */
+    private boolean isRoomFor(int x, int y, Direction dir) {
+        for (int i = -1; i < startLength; i++) {
+            int cell = cellAt(x - dir.getDx() * i, y - dir.getDy() * i);
+            if (cell < 0 || cells[cell] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Puts an apple in a random empty cell, searching the grid from a random
+     * cell if several picks in a row are not empty. Nothing is placed if the
+     * grid is full.
+     */
+    private void placeApple() {
+        int cell = -1;
+        for (int i = 0; i < MAX_PLACE_TRIES && cell < 0; i++) {
+            int pick = random.nextInt(cells.length);
+            if (cells[pick] == 0) {
+                cell = pick;
+            }
+        }
+        if (cell < 0) {
+            int start = random.nextInt(cells.length);
+            for (int i = 0; i < cells.length && cell < 0; i++) {
+                int pick = (start + i) % cells.length;
+                if (cells[pick] == 0) {
+                    cell = pick;
+                }
+            }
+        }
+        if (cell >= 0 && appleCount < apples.length) {
+            apples[appleCount] = cell;
+            setCell(cell, -(appleCount + 1));
+            appleCount++;
+        }
+    }
+    
+    /**
+     * Takes an apple off the grid, moving the last apple into its place in
+     * the list so the list stays packed
+     * @param cell the index of the cell the apple is in
+     */
+    private void removeApple(int cell) {
+        int index = -cells[cell] - 1;
+        int last = apples[--appleCount];
+        apples[index] = last;
+        //The last apple is still an apple so moving it in the list is not a
+        //change to the grid
+        cells[last] = -(index + 1);
+        setCell(cell, 0);
+    }
+    
+    /**
+     * Changes what is in a cell and remembers that it changed
+     * @param cell the index of the cell
+     * @param value the new contents of the cell
+     */
+    private void setCell(int cell, int value) {
+        cells[cell] = value;
+        if (changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = cell;
+    }
+    
+    /**
+     * Gets the index of a cell or -1 if it is outside the grid
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return the index of the cell
+     */
+    private int cellAt(int x, int y) {
+        if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+            return -1;
+        }
+        return y * gridWidth + x;
+    }
+    
+    /**
+     * Queues a turn for the player's snake to make on a later tick. May be
+     * called from a different thread to the one ticking.
+     * @param dir the direction to turn in
+     */
+    public void queueTurn(Direction dir) {
+        queueTurn(PLAYER, dir);
+    }
+    
+    /**
+     * Queues a turn for a player's snake to make on a later tick. May be
+     * called from one thread other than the one ticking. Turns for snakes
+     * steered by bots are ignored.
+     * @param id the number of the snake
+     * @param dir the direction to turn in
+     */
+    public void queueTurn(int id, Direction dir) {
+        DirectionQueue queue = turns[id];
+        if (queue != null) {
+            queue.offer(dir);
+        }
+    }
+    
+    /**
+     * Hands a snake over to a player or back to a bot. Must be called on the
+     * thread that ticks.
+     * @param id the number of the snake
+     * @param value true if a player steers the snake
+     */
+    public void setControlled(int id, boolean value) {
+        controlled[id] = value;
+        turns[id] = value ? new DirectionQueue(16) : null;
+    }
+    
+    /**
+     * Checks whether a snake is steered by a player
+     * @param id the number of the snake
+     * @return true if a player steers the snake
+     */
+    public boolean isControlled(int id) {
+        return controlled[id];
+    }
+    
+    /**
+     * Gets the number of times a cell changed during the last tick
+     * @return the number of changes, which may include a cell more than once
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+    
+    /**
+     * Gets a cell that changed during the last tick. Its contents can be read
+     * with getOwner and isApple.
+     * @param index the index of the change, from 0 to getChangeCount
+     * @return the index of the cell, y * width + x
+     */
+    public int getChangedCell(int index) {
+        return changes[index];
+    }
+    
+    /**
+     * Gets the cell an apple is in
+     * @param index the index of the apple, from 0 to getAppleCount
+     * @return the index of the cell, y * width + x
+     */
+    public int getAppleCell(int index) {
+        return apples[index];
+    }
+    
+    /**
+     * Stops the threads used to pick moves
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Copies the contents of a rectangle of cells, one row at a time, in the
+     * form they are kept in: zero for an empty cell, n + 1 for a part of snake
+     * n and a negative number for an apple. Must be called on the thread that
+     * ticks.
+     * @param x the x coordinate of the left of the rectangle
+     * @param y the y coordinate of the top of the rectangle
+     * @param width the width of the rectangle, which must fit in the grid
+     * @param height the height of the rectangle, which must fit in the grid
+     * @param dest the array to copy into, at least width * height long
+     */
+    public void copyCells(int x, int y, int width, int height, int[] dest) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(cells, (y + row) * gridWidth + x, dest, row * width, width);
+        }
+    }
+    
+    /**
+     * Gets the snake in a cell
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return the number of the snake, or -1 if there is no snake in the cell
+     */
+    public int getOwner(int x, int y) {
+        int value = cells[y * gridWidth + x];
+        return value > 0 ? value - 1 : -1;
+    }
+    
+    /**
+     * Checks whether there is an apple in a cell
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return true if there is an apple in the cell
+     */
+    public boolean isApple(int x, int y) {
+        return cells[y * gridWidth + x] < 0;
+    }
+    
+    /**
+     * Gets a snake. The same snake is started again when it dies.
+     * @param id the number of the snake
+     * @return the snake, or null if it has never found room to start
+     */
+    public Snake getSnake(int id) {
+        return snakes[id];
+    }
+    
+    /**
+     * Checks whether a snake is on the grid
+     * @param id the number of the snake
+     * @return true if the snake is alive
+     */
+    public boolean isAlive(int id) {
+        return alive[id];
+    }
+    
+    /**
+     * Gets the number of apples a snake has eaten since it last started
+     * @param id the number of the snake
+     * @return the score of the snake
+     */
+    public int getScore(int id) {
+        return scores[id];
+    }
+    
+    /**
+     * Gets the number of snakes, alive or not
+     * @return the number of snakes
+     */
+    public int getSnakeCount() {
+        return snakes.length;
+    }
+    
+    /**
+     * Gets the number of snakes that are alive
+     * @return the number of snakes on the grid
+     */
+    public int getAliveCount() {
+        int count = 0;
+        for (boolean a : alive) {
+            if (a) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the number of apples on the grid
+     * @return the number of apples
+     */
+    public int getAppleCount() {
+        return appleCount;
+    }
+    
+    /**
+     * Checks whether the first snake is steered by the player
+     * @return true if there is a player
+     */
+    public boolean hasPlayer() {
+        return controlled.length > 0 && controlled[PLAYER];
+    }
+    
+    /**
+     * Gets the width of the grid
+     * @return the width in cells
+     */
+    public int getGridWidth() {
+        return gridWidth;
+    }
+    
+    /**
+     * Gets the height of the grid
+     * @return the height in cells
+     */
+    public int getGridHeight() {
+        return gridHeight;
+    }
+    
+    /**
+     * Gets the number of ticks run so far
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    /**
+     * Gets the number of times any snake has died
+     * @return the number of deaths
+     */
+    public long getDeaths() {
+        return deaths;
+    }
+    
+    /**
+     * Gets the number of apples eaten by every snake
+     * @return the number of apples eaten
+     */
+    public long getApplesEaten() {
+        return applesEaten;
+    }
+    
+    /**
+     * Picks the moves of a range of snakes, splitting it in half until it is
+     * small enough
+     */
+    @SuppressWarnings("serial")
+    private class ProposeTask extends RecursiveAction {
+        private final int from, to;
+        
+        ProposeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > SNAKES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ProposeTask(from, mid), new ProposeTask(mid, to));
+                return;
+            }
+            propose(from, to);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package snake;
+
+import java.nio.IntBuffer;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws an Arena into an image with one pixel per cell in the same way as
+ * PixelRenderer. With so many snakes moving most of the view changes every
+ * tick, so the whole view is drawn every frame from the cells copied into an
+ * ArenaSnapshot rather than working out what changed. ArenaSimulation picks
+ * which part of the arena the snapshot holds so that the view follows the
+ * player's snake.
+ * @author Ashley Allen
+ */
+public class ArenaRenderer {
+    private static final int BACKGROUND_PIXEL = PixelRenderer.toArgb(Color.WHITE);
+    private static final int PLAYER_PIXEL = PixelRenderer.toArgb(Color.GREEN);
+    private static final int APPLE_PIXEL = PixelRenderer.toArgb(Color.RED);
+    
+    private final int viewWidth, viewHeight;
+    private final int[] pixels;
+    private final WritableImage image;
+    private final ImageView view;
+    private final PixelFormat<IntBuffer> format = PixelFormat.getIntArgbPreInstance();
+    
+    //The colour of each snake, spread around the colour wheel
+    private final int[] snakePixels;
+    
+    /**
+     * Initialises a new ArenaRenderer
+     * @param arena the arena to draw, only used to colour its snakes
+     * @param viewWidth the number of columns of cells shown
+     * @param viewHeight the number of rows of cells shown
+     * @param cellSize the size in pixels of each cell when shown
+     */
+    public ArenaRenderer(Arena arena, int viewWidth, int viewHeight, int cellSize) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        pixels = new int[viewWidth * viewHeight];
+        image = new WritableImage(viewWidth, viewHeight);
+        view = new ImageView(image);
+        view.setSmooth(false);
+        view.setFitWidth(viewWidth * cellSize);
+        view.setFitHeight(viewHeight * cellSize);
+        
+        snakePixels = new int[arena.getSnakeCount()];
+        for (int id = 0; id < snakePixels.length; id++) {
+            snakePixels[id] = PixelRenderer.toArgb(Color.hsb(id * 137.5 % 360, 0.6, 0.7));
+        }
+        if (arena.hasPlayer()) {
+            snakePixels[Arena.PLAYER] = PLAYER_PIXEL;
+        }
+    }
+    
+    /**
+     * Draws the part of the arena around the player
+     * @param snapshot the snapshot to draw, which must be the same size as
+     * the view
+     */
+    public void render(ArenaSnapshot snapshot) {
+        for (int y = 0; y < viewHeight; y++) {
+            for (int x = 0; x < viewWidth; x++) {
+                int owner = snapshot.getOwner(x, y);
+                int pixel;
+                if (owner >= 0) {
+                    pixel = snakePixels[owner];
+                } else if (snapshot.isApple(x, y)) {
+                    pixel = APPLE_PIXEL;
+                } else {
+                    pixel = BACKGROUND_PIXEL;
+                }
+                pixels[y * viewWidth + x] = pixel;
+            }
+        }
+        image.getPixelWriter().setPixels(0, 0, viewWidth, viewHeight, format, pixels, 0, viewWidth);
+    }
+    
+    /**
+     * Gets the node that shows the arena
+     * @return the ImageView showing the arena
+     */
+    public ImageView getView() {
+        return view;
+    }
+}
@@ -0,0 +1,183 @@
+package snake;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs an Arena on its own thread at a fixed tick rate in the same way as
+ * GameSimulation, so that ticking thousands of snakes never holds up drawing
+ * a frame. After ticking a snapshot of the part of the arena around the
+ * player is published for the window to draw. The view follows the player's
+ * snake, which is worked out here since it decides which cells are copied.
+ * @author Ashley Allen
+ */
+public class ArenaSimulation implements Runnable {
+    //The most ticks to run at once when catching up after falling behind
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    
+    private final Arena arena;
+    private final SnapshotBuffer<ArenaSnapshot> snapshots;
+    private final FixedTimestep timestep;
+    private final int viewWidth, viewHeight;
+    
+    //The cell of the grid shown at the top left of the view
+    private int viewX = 0, viewY = 0;
+    
+    //Set by input and read when ticking
+    private volatile boolean paused = false;
+    private volatile double ticksPerSecond;
+    
+    private volatile boolean running = false;
+    private Thread thread;
+    
+    /**
+     * Creates a new ArenaSimulation
+     * @param arena the arena to run
+     * @param ticksPerSecond the number of ticks to run each second
+     * @param viewWidth the number of columns of cells shown
+     * @param viewHeight the number of rows of cells shown
+     */
+    public ArenaSimulation(Arena arena, double ticksPerSecond, int viewWidth, int viewHeight) {
+        this.arena = arena;
+        this.ticksPerSecond = ticksPerSecond;
+        this.timestep = new FixedTimestep(ticksPerSecond, MAX_CATCH_UP_TICKS);
+        this.viewWidth = Math.min(viewWidth, arena.getGridWidth());
+        this.viewHeight = Math.min(viewHeight, arena.getGridHeight());
+        this.snapshots = new SnapshotBuffer<>(new ArenaSnapshot(this.viewWidth, this.viewHeight), new ArenaSnapshot(this.viewWidth, this.viewHeight));
+        publishSnapshot();
+    }
+    
+    /**
+     * Starts running the arena on a new daemon thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Snake arena");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stops the simulation thread, waits for it to finish and stops the
+     * threads the arena picks moves on
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        arena.shutdown();
+    }
+    
+    /**
+     * Runs ticks as they fall due until stopped, sleeping in between
+     */
+    @Override
+    public void run() {
+        while (running) {
+            if (timestep.getTicksPerSecond() != ticksPerSecond) {
+                timestep.setTicksPerSecond(ticksPerSecond);
+            }
+            int due = timestep.advance(System.nanoTime());
+            if (!paused) {
+                for (int i = 0; i < due; i++) {
+                    arena.tick();
+                }
+            }
+            if (due > 0) {
+                publishSnapshot();
+            }
+            LockSupport.parkNanos(timestep.getNanosUntilNextTick());
+        }
+    }
+    
+    /**
+     * Copies the cells in view into the back snapshot buffer and publishes
+     * it, unless the reader is still drawing from that buffer
+     */
+    private void publishSnapshot() {
+        followPlayer();
+        ArenaSnapshot snapshot = snapshots.beginWrite();
+        if (snapshot != null) {
+            snapshot.capture(arena, this, viewX, viewY);
+            snapshots.publish();
+        }
+    }
+    
+    /**
+     * Moves the view to centre the player's head if it is near an edge of the
+     * view. The view stays where it is while the player is dead.
+     */
+    private void followPlayer() {
+        if (!arena.isAlive(Arena.PLAYER)) {
+            return;
+        }
+        Snake snake = arena.getSnake(Arena.PLAYER);
+        int x = snake.getBodyX(0) - viewX;
+        int y = snake.getBodyY(0) - viewY;
+        int marginX = viewWidth / 4;
+        int marginY = viewHeight / 4;
+        if (x < marginX || x >= viewWidth - marginX || y < marginY || y >= viewHeight - marginY) {
+            viewX = Math.max(0, Math.min(arena.getGridWidth() - viewWidth, snake.getBodyX(0) - viewWidth / 2));
+            viewY = Math.max(0, Math.min(arena.getGridHeight() - viewHeight, snake.getBodyY(0) - viewHeight / 2));
+        }
+    }
+    
+    /**
+     * Gets the buffer that snapshots are published to
+     * @return the snapshot buffer
+     */
+    public SnapshotBuffer<ArenaSnapshot> getSnapshots() {
+        return snapshots;
+    }
+    
+    /**
+     * Queues a turn for the player's snake to make on a later tick. Must only
+     * be called from a single input thread.
+     * @param dir the direction to turn in
+     */
+    public void queueTurn(Direction dir) {
+        if (!paused) {
+            arena.queueTurn(dir);
+        }
+    }
+    
+    /**
+     * Pauses or resumes the arena
+     */
+    public void togglePaused() {
+        paused = !paused;
+    }
+    
+    /**
+     * Returns whether the arena is paused or not
+     * @return paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Changes how many ticks are run each second
+     * @param ticksPerSecond the new tick rate
+     */
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+    
+    /**
+     * Gets how many ticks are run each second
+     * @return the tick rate
+     */
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+}
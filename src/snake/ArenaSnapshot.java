@@ -0,0 +1,98 @@
+package snake;
+
+/**
+ * A copy of the part of an Arena shown in the window at the end of a tick,
+ * along with the player's score. Like GameSnapshot it is filled in by the
+ * simulation thread and only read once published. Only the cells in view are
+ * copied, since the whole grid of a large arena would take far longer to copy
+ * than a tick.
+ * @author Ashley Allen
+ */
+public class ArenaSnapshot {
+    private final int viewWidth, viewHeight;
+    private final int[] cells;
+    private int score;
+    private int aliveCount;
+    private int snakeCount;
+    private boolean paused;
+    
+    /**
+     * Creates a new ArenaSnapshot
+     * @param viewWidth the number of columns of cells shown
+     * @param viewHeight the number of rows of cells shown
+     */
+    public ArenaSnapshot(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.cells = new int[viewWidth * viewHeight];
+    }
+    
+    /**
+     * Copies the cells in view and the player's score into this snapshot
+     * @param arena the arena to copy
+     * @param simulation the simulation running the arena
+     * @param viewX the x coordinate of the cell shown at the top left
+     * @param viewY the y coordinate of the cell shown at the top left
+     */
+    void capture(Arena arena, ArenaSimulation simulation, int viewX, int viewY) {
+        arena.copyCells(viewX, viewY, viewWidth, viewHeight, cells);
+        score = arena.getScore(Arena.PLAYER);
+        aliveCount = arena.getAliveCount();
+        snakeCount = arena.getSnakeCount();
+        paused = simulation.isPaused();
+    }
+    
+    /**
+     * Gets the snake in a cell of the view
+     * @param x the x coordinate of the cell from the left of the view
+     * @param y the y coordinate of the cell from the top of the view
+     * @return the number of the snake, or -1 if there is no snake in the cell
+     */
+    public int getOwner(int x, int y) {
+        int value = cells[y * viewWidth + x];
+        return value > 0 ? value - 1 : -1;
+    }
+    
+    /**
+     * Checks whether there is an apple in a cell of the view
+     * @param x the x coordinate of the cell from the left of the view
+     * @param y the y coordinate of the cell from the top of the view
+     * @return true if there is an apple in the cell
+     */
+    public boolean isApple(int x, int y) {
+        return cells[y * viewWidth + x] < 0;
+    }
+    
+    /**
+     * Gets the number of apples the player's snake has eaten since it last
+     * started
+     * @return the player's score
+     */
+    public int getScore() {
+        return score;
+    }
+    
+    /**
+     * Gets the number of snakes that were alive
+     * @return the number of snakes on the grid
+     */
+    public int getAliveCount() {
+        return aliveCount;
+    }
+    
+    /**
+     * Gets the number of snakes, alive or not
+     * @return the number of snakes
+     */
+    public int getSnakeCount() {
+        return snakeCount;
+    }
+    
+    /**
+     * Returns whether the arena was paused
+     * @return paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+}
@@ -0,0 +1,24 @@
+package snake;
+
+/**
+ * A strategy that steers the snake automatically
+ * @author Ashley Allen
+ */
+public interface Autopilot {
+    
+    /**
+     * Chooses the direction the snake should move in on the next tick
+     * @param game the game being played
+     * @return the direction to turn in
+     */
+    Direction nextDirection(Game game);
+    
+    /**
+     * Gets how many times the autopilot has had to work out a new plan, for
+     * autopilots that plan ahead
+     * @return the number of plans made
+     */
+    default long getReplans() {
+        return 0;
+    }
+}
@@ -0,0 +1,36 @@
+package snake;
+
+/**
+ * The different Autopilot implementations that can steer the snake
+ * @author Ashley Allen
+ */
+public enum AutopilotStrategy {
+    /** Always moves to the free neighbour closest to the apple */
+    GREEDY,
+    /** Follows the shortest path to the apple found by a breadth first search */
+    PATH,
+    /** Follows a cycle through every cell, taking shortcuts while short */
+    HAMILTONIAN,
+    /** Plays many short random games ahead from each move and takes the best */
+    ROLLOUT;
+    
+    /**
+     * Creates a new Autopilot of this type
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @return the new Autopilot
+     */
+    public Autopilot create(int gridWidth, int gridHeight) {
+        switch (this) {
+            case GREEDY:
+                return new GreedyAutopilot();
+            case HAMILTONIAN:
+                return new HamiltonianAutopilot(gridWidth, gridHeight);
+            case ROLLOUT:
+                return new RolloutAutopilot(gridWidth, gridHeight);
+            case PATH:
+            default:
+                return new Path(gridWidth, gridHeight);
+        }
+    }
+}
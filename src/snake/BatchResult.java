@@ -0,0 +1,159 @@
+package snake;
+
+/**
+ * The statistics collected from a batch of simulated games
+ * @author Ashley Allen
+ */
+public class BatchResult {
+    private final int games;
+    private final long steps;
+    private final long apples;
+    private final int timedOut;
+    private final int won;
+    private final long[] scoreCounts;
+    private final long elapsedNanos;
+    
+    /**
+     * Creates a new BatchResult
+     * @param games the number of games played
+     * @param steps the total number of steps survived across all games
+     * @param apples the total number of apples eaten across all games
+     * @param timedOut the number of games stopped at the step limit
+     * @param won the number of games where the snake filled the grid
+     * @param scoreCounts the number of games that finished with each score
+     * @param elapsedNanos how long the batch took to run
+     */
+    public BatchResult(int games, long steps, long apples, int timedOut, int won, long[] scoreCounts, long elapsedNanos) {
+        this.games = games;
+        this.steps = steps;
+        this.apples = apples;
+        this.timedOut = timedOut;
+        this.won = won;
+        this.scoreCounts = scoreCounts;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /**
+     * Gets the number of games played
+     * @return the number of games
+     */
+    public int getGames() {
+        return games;
+    }
+    
+    /**
+     * Gets the total number of steps survived across all games
+     * @return the total number of steps
+     */
+    public long getSteps() {
+        return steps;
+    }
+    
+    /**
+     * Gets the total number of apples eaten across all games
+     * @return the total number of apples
+     */
+    public long getApples() {
+        return apples;
+    }
+    
+    /**
+     * Gets the number of games that were stopped at the step limit rather
+     * than ending in a collision
+     * @return the number of games that timed out
+     */
+    public int getTimedOut() {
+        return timedOut;
+    }
+    
+    /**
+     * Gets the number of games where the snake filled the whole grid
+     * @return the number of games won
+     */
+    public int getWon() {
+        return won;
+    }
+    
+    /**
+     * Gets the number of games that finished with the specified score
+     * @param score the score
+     * @return the number of games with that score
+     */
+    public long getScoreCount(int score) {
+        return score >= 0 && score < scoreCounts.length ? scoreCounts[score] : 0;
+    }
+    
+    /**
+     * Gets the mean score per game
+     * @return the mean score
+     */
+    public double getMeanScore() {
+        return games == 0 ? 0 : (double) apples / games;
+    }
+    
+    /**
+     * Gets the highest score of any game
+     * @return the highest score
+     */
+    public int getMaxScore() {
+        for (int score = scoreCounts.length - 1; score >= 0; score--) {
+            if (scoreCounts[score] > 0) {
+                return score;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Gets the score that the specified fraction of games scored at or below
+     * @param fraction the fraction of games between 0 and 1
+     * @return the score at that percentile
+     */
+    public int getScorePercentile(double fraction) {
+        long target = (long) Math.ceil(fraction * games);
+        long seen = 0;
+        for (int score = 0; score < scoreCounts.length; score++) {
+            seen += scoreCounts[score];
+            if (seen >= target && seen > 0) {
+                return score;
+            }
+        }
+        return getMaxScore();
+    }
+    
+    /**
+     * Gets the mean number of steps survived per game
+     * @return the mean number of steps
+     */
+    public double getMeanSteps() {
+        return games == 0 ? 0 : (double) steps / games;
+    }
+    
+    /**
+     * Gets the mean number of steps taken to eat each apple
+     * @return the steps per apple, or infinity if no apples were eaten
+     */
+    public double getStepsPerApple() {
+        return apples == 0 ? Double.POSITIVE_INFINITY : (double) steps / apples;
+    }
+    
+    /**
+     * Gets how many games were simulated per second
+     * @return the number of games per second
+     */
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("games: %d (%d won, %d timed out)%n"
+                + "score: mean %.2f, p50 %d, p90 %d, p99 %d, max %d%n"
+                + "steps: mean %.1f, %.1f per apple%n"
+                + "speed: %.0f games/s",
+                games, won, timedOut,
+                getMeanScore(), getScorePercentile(0.5), getScorePercentile(0.9), getScorePercentile(0.99), getMaxScore(),
+                getMeanSteps(), getStepsPerApple(),
+                getGamesPerSecond());
+    }
+}
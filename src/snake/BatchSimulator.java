@@ -0,0 +1,261 @@
+package snake;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Plays a large number of independent headless games in parallel and collects
+ * statistics about how well an Autopilot performs. Every game is seeded from
+ * the batch seed and its own index so the results for a given seed are the
+ * same however many threads are used.
+ * @author Ashley Allen
+ */
+public class BatchSimulator {
+    //Below this many games a task plays its games itself instead of splitting
+    private static final int GAMES_PER_TASK = 16;
+    
+    private final int gridWidth, gridHeight;
+    private final int maxSteps;
+    private final Supplier<? extends Autopilot> autopilots;
+    
+    //Where every game is added as it finishes, or null, and the strategy to
+    //record the games under
+    private Leaderboard leaderboard;
+    private AutopilotStrategy strategy;
+    
+    /**
+     * Creates a new BatchSimulator
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param maxSteps the number of steps after which a game is stopped if
+     * the snake is still alive
+     * @param autopilots creates the Autopilot that steers the snake, called
+     * once for each task so implementations need not be thread safe
+     */
+    public BatchSimulator(int gridWidth, int gridHeight, int maxSteps, Supplier<? extends Autopilot> autopilots) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.maxSteps = maxSteps;
+        this.autopilots = autopilots;
+    }
+    
+    /**
+     * Adds every game played to a leaderboard as it finishes
+     * @param leaderboard the leaderboard, or null to not keep one
+     * @param strategy the autopilot strategy the games are played with
+     */
+    public void setLeaderboard(Leaderboard leaderboard, AutopilotStrategy strategy) {
+        this.leaderboard = leaderboard;
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Plays the specified number of games and collects their statistics
+     * @param games the number of games to play
+     * @param seed the seed that every game's seed is derived from
+     * @param threads the number of threads to play games on
+     * @return the statistics of the batch
+     * @throws UncheckedIOException if the games cannot be added to the
+     * leaderboard
+     */
+    public BatchResult run(int games, long seed, int threads) {
+        Totals totals = new Totals(gridWidth * gridHeight + 1);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long startNanoTime = System.nanoTime();
+        try {
+            pool.invoke(new GamesTask(0, games, seed, totals));
+        } finally {
+            pool.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - startNanoTime;
+        
+        long[] scoreCounts = new long[totals.scoreCounts.length()];
+        for (int i = 0; i < scoreCounts.length; i++) {
+            scoreCounts[i] = totals.scoreCounts.get(i);
+        }
+        return new BatchResult(games, totals.steps.sum(), totals.apples.sum(), totals.timedOut.intValue(), totals.won.intValue(), scoreCounts, elapsedNanos);
+    }
+    
+    /**
+     * Derives the seed of a single game from the batch seed so neighbouring
+     * games do not get correlated apple positions
+     * @param seed the batch seed
+     * @param game the index of the game
+     * @return the seed for that game
+     */
+    static long gameSeed(long seed, int game) {
+        long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Counters shared by every task. They are only ever added to, so the
+     * totals do not depend on the order the games finish in.
+     */
+    private static class Totals {
+        final LongAdder steps = new LongAdder();
+        final LongAdder apples = new LongAdder();
+        final LongAdder timedOut = new LongAdder();
+        final LongAdder won = new LongAdder();
+        final AtomicLongArray scoreCounts;
+        
+        Totals(int maxScore) {
+            scoreCounts = new AtomicLongArray(maxScore);
+        }
+    }
+    
+    /**
+     * Plays a range of games, splitting it in half until it is small enough
+     */
+    @SuppressWarnings("serial")
+    private class GamesTask extends RecursiveAction {
+        private final int from, to;
+        private final long seed;
+        private final Totals totals;
+        
+        GamesTask(int from, int to, long seed, Totals totals) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.totals = totals;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > GAMES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new GamesTask(from, mid, seed, totals), new GamesTask(mid, to, seed, totals));
+                return;
+            }
+            Autopilot autopilot = autopilots.get();
+            for (int game = from; game < to; game++) {
+                play(new GameEngine(gridWidth, gridHeight, gameSeed(seed, game)), autopilot, gameSeed(seed, game));
+            }
+        }
+        
+        /**
+         * Plays a single game until the snake dies, fills the grid or the step
+         * limit is reached
+         * @param engine the game to play
+         * @param autopilot the Autopilot steering the snake
+         * @param gameSeed the seed the game was created with
+         */
+        private void play(GameEngine engine, Autopilot autopilot, long gameSeed) {
+            int steps = 0;
+            int score = 0;
+            int length = 0;
+            boolean growing = false;
+            StepResult result = StepResult.MOVED;
+            while (steps < maxSteps && result != StepResult.DIED && result != StepResult.WON) {
+                engine.changeDirection(autopilot.nextDirection(engine));
+                //The engine starts a new game when the snake dies so the score
+                //has to be read before stepping
+                score = engine.getScore();
+                length = engine.getSnake().getLength();
+                growing = engine.getSnake().isGrowing();
+                result = engine.step();
+                steps++;
+            }
+            if (result == StepResult.WON) {
+                //The winning move grew the snake if it was still growing and
+                //the apple it ate grows it once more
+                score++;
+                length += growing ? 2 : 1;
+                totals.won.increment();
+            } else if (result != StepResult.DIED) {
+                score = engine.getScore();
+                length = engine.getSnake().getLength();
+                totals.timedOut.increment();
+            }
+            totals.steps.add(steps);
+            totals.apples.add(score);
+            totals.scoreCounts.incrementAndGet(score);
+            if (leaderboard != null) {
+                try {
+                    leaderboard.add(score, length, steps, gameSeed, strategy);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks a grid size given on the command line in the same way as
+     * GameConfig, since the games are created with the default snake
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     * @return what is wrong with the grid, or null if games can be played on
+     * it
+     */
+    private static String getGridProblem(int gridWidth, int gridHeight) {
+        if (gridWidth < 2 || gridHeight < 2) {
+            return "The grid must be at least 2x2 but was " + gridWidth + "x" + gridHeight;
+        }
+        if ((long) gridWidth * gridHeight > Integer.MAX_VALUE) {
+            return "The grid must have no more than " + Integer.MAX_VALUE + " cells but was " + gridWidth + "x" + gridHeight;
+        }
+        //The snake is laid out behind its head in the middle of the grid, so
+        //its tail has to fit in the grid too
+        int length = GameEngine.DEFAULT_START_LENGTH;
+        Direction dir = GameEngine.DEFAULT_START_DIRECTION;
+        int tailX = gridWidth / 2 - dir.getDx() * (length - 1);
+        int tailY = gridHeight / 2 - dir.getDy() * (length - 1);
+        if (tailX < 0 || tailX >= gridWidth || tailY < 0 || tailY >= gridHeight) {
+            return "A snake of length " + length + " moving " + dir + " does not fit a " + gridWidth + "x" + gridHeight + " grid";
+        }
+        return null;
+    }
+    
+    /**
+     * Runs a batch from the command line and prints its statistics. The
+     * optional arguments are the number of games, the number of threads, the
+     * seed, the grid width, the grid height, a comma separated list of
+     * autopilot strategies to compare and a leaderboard file to add every
+     * game to.
+     * @param args the command line arguments
+     * @throws IOException if the leaderboard file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+        int gridWidth = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int gridHeight = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+        String strategies = args.length > 5 ? args[5] : AutopilotStrategy.PATH.name();
+        String problem = getGridProblem(gridWidth, gridHeight);
+        if (problem != null) {
+            System.err.println("Usage: BatchSimulator [games] [threads] [seed] [width] [height] [strategies] [leaderboard file]");
+            System.err.println(problem);
+            System.exit(2);
+        }
+        Leaderboard leaderboard = args.length > 6 ? new Leaderboard(Paths.get(args[6]), Leaderboard.DEFAULT_CAPACITY) : null;
+        
+        //Enough steps for a snake that never dies to fill the grid one cycle
+        //at a time
+        int cells = gridWidth * gridHeight;
+        int maxSteps = (int) Math.min((long) cells * cells, Integer.MAX_VALUE);
+        for (String name : strategies.split(",")) {
+            AutopilotStrategy strategy = AutopilotStrategy.valueOf(name.trim().toUpperCase());
+            BatchSimulator simulator = new BatchSimulator(gridWidth, gridHeight, maxSteps, () -> strategy.create(gridWidth, gridHeight));
+            simulator.setLeaderboard(leaderboard, strategy);
+            System.out.println(strategy + ":");
+            System.out.println(simulator.run(games, seed, threads));
+        }
+        if (leaderboard != null) {
+            leaderboard.close();
+            System.out.println("Leaderboard of " + leaderboard.getGames() + " games:");
+            for (GameRecord game : leaderboard.getBest(10)) {
+                System.out.println("  " + game);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package snake;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct ByteBuffers of one size, so that sending a message does not
+ * allocate a new buffer outside the heap every time. Larger buffers can be
+ * asked for but are not kept once released. A pool must only be used by one
+ * thread.
+ * @author Ashley Allen
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private long allocated = 0;
+    
+    /**
+     * Creates a new empty BufferPool
+     * @param bufferSize the capacity of each pooled buffer in bytes
+     * @param maxPooled the most buffers to keep for reuse at once
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+    
+    /**
+     * Takes a cleared buffer out of the pool, allocating a new one if the
+     * pool is empty or the size asked for is larger than a pooled buffer
+     * @param size the number of bytes needed
+     * @return a buffer with at least that much room
+     */
+    public ByteBuffer acquire(int size) {
+        ByteBuffer buffer = size <= bufferSize ? free.poll() : null;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, bufferSize));
+            allocated++;
+        }
+        return buffer;
+    }
+    
+    /**
+     * Returns a buffer to the pool once it is no longer used
+     * @param buffer the buffer to return
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize && free.size() < maxPooled) {
+            buffer.clear();
+            free.push(buffer);
+        }
+    }
+    
+    /**
+     * Gets the number of buffers allocated by the pool since it was created,
+     * which stops growing once the pool holds enough for the load on it
+     * @return the number of buffers allocated
+     */
+    public long getAllocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,84 @@
+package snake;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a game to a GraphicsContext with one filled rectangle for each
+ * straight run of cells, changing the fill colour only when it differs from
+ * the last one used. The head slides smoothly between cells.
+ * @author Ashley Allen
+ */
+public class CanvasRenderer extends GameRenderer {
+    private final GraphicsContext gc;
+    private final int cellSize;
+    
+    //The fill colour last given to the GraphicsContext
+    private Color fill;
+    
+    /**
+     * Initialises a new CanvasRenderer that draws the whole game grid
+     * @param gc the GraphicsContext that the game will be drawn to
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param cellSize the size in pixels of each cell in the grid
+     */
+    public CanvasRenderer(GraphicsContext gc, int gridWidth, int gridHeight, int cellSize) {
+        this(gc, gridWidth, gridHeight, gridWidth, gridHeight, cellSize);
+    }
+    
+    /**
+     * Initialises a new CanvasRenderer that draws part of the game grid
+     * around the snake's head
+     * @param gc the GraphicsContext that the game will be drawn to
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param viewWidth the number of columns of cells drawn
+     * @param viewHeight the number of rows of cells drawn
+     * @param cellSize the size in pixels of each cell in the grid
+     */
+    public CanvasRenderer(GraphicsContext gc, int gridWidth, int gridHeight, int viewWidth, int viewHeight, int cellSize) {
+        super(gridWidth, gridHeight, viewWidth, viewHeight);
+        this.gc = gc;
+        this.cellSize = cellSize;
+    }
+    
+    @Override
+    protected void fillBackground(Color color) {
+        setFill(color);
+        gc.fillRect(0, 0, viewWidth * cellSize, viewHeight * cellSize);
+    }
+    
+    @Override
+    protected void fillCells(Color color, int minX, int minY, int maxX, int maxY) {
+        setFill(color);
+        gc.fillRect(minX * cellSize, minY * cellSize, (maxX - minX + 1) * cellSize, (maxY - minY + 1) * cellSize);
+    }
+    
+    @Override
+    protected void drawMovingHead(long from, long to, double alpha) {
+        fillCells(BACKGROUND_COLOR, Coordinates.x(to), Coordinates.y(to), Coordinates.x(to), Coordinates.y(to));
+        double x = Coordinates.x(from) + (Coordinates.x(to) - Coordinates.x(from)) * alpha;
+        double y = Coordinates.y(from) + (Coordinates.y(to) - Coordinates.y(from)) * alpha;
+        setFill(SNAKE_COLOR);
+        gc.fillRect(x * cellSize, y * cellSize, cellSize, cellSize);
+    }
+    
+    @Override
+    protected void finishFrame() {
+        //Draw a grid around the game grid
+        gc.strokeRect(0, 0, viewWidth * cellSize, viewHeight * cellSize);
+    }
+    
+    /**
+     * Changes the fill colour only if it is different to the current one, so
+     * that drawing many cells of the same colour sets it once
+     * @param color the Color to fill with
+     */
+    private void setFill(Color color) {
+        if (color != fill) {
+            gc.setFill(color);
+            fill = color;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package snake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a game to a file every so often while it is played. The thread that
+ * steps the game only copies its state, which takes about as long as
+ * publishing a snapshot, and a background thread writes the copy to the file.
+ * If the last copy is still being written when the next one falls due, that
+ * one is skipped rather than holding up the game. Saves alternate between two
+ * files, as described in GameState, so a save cut short by a crash fails its
+ * CRC and the one before it is loaded instead. Both files stay mapped between
+ * saves so each save only copies the state into memory and waits for it to
+ * reach the disk.
+ * @author Ashley Allen
+ */
+public class Checkpointer implements Runnable, Closeable {
+    private final GameEngine engine;
+    private final FileChannel[] channels = new FileChannel[2];
+    private final long intervalNanos;
+    private final Thread thread;
+    
+    //Filled in by the game's thread and written by the background thread,
+    //but never both at once
+    private final GameState state = new GameState();
+    private final MappedByteBuffer[] buffers = new MappedByteBuffer[2];
+    //The number of the last save written, whose file is left alone by the
+    //next save
+    private int saveNumber;
+    private boolean writing = false;
+    private boolean closed = false;
+    
+    private long lastNanoTime;
+    private volatile long saves = 0;
+    private volatile long skipped = 0;
+    
+    /**
+     * Creates a new Checkpointer and starts its background thread
+     * @param engine the game to save, which must only be stepped on the thread
+     * that calls update
+     * @param file the file to save to, along with the file next to it with .1
+     * added to its name, the older of which is replaced by the first save
+     * @param intervalNanos the time between saves in nanoseconds
+     * @throws IOException if the files cannot be opened
+     */
+    public Checkpointer(GameEngine engine, Path file, long intervalNanos) throws IOException {
+        this.engine = engine;
+        this.intervalNanos = intervalNanos;
+        //Carry on numbering from the newest save so it is kept until the
+        //first save here has been written
+        try {
+            GameState latest = GameState.loadLatest(file);
+            saveNumber = latest != null ? latest.getSaveNumber() : 0;
+        } catch (IOException ex) {
+            saveNumber = 0;
+        }
+        try {
+            for (int slot = 0; slot < 2; slot++) {
+                channels[slot] = FileChannel.open(GameState.getSaveFile(file, slot), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } catch (IOException ex) {
+            closeChannels();
+            throw ex;
+        }
+        this.lastNanoTime = System.nanoTime();
+        thread = new Thread(this, "Snake checkpoints");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Saves the game if it is time to. Must be called on the thread that steps
+     * the game, between steps.
+     * @param nanoTime the current time in nanoseconds
+     */
+    public void update(long nanoTime) {
+        if (nanoTime - lastNanoTime >= intervalNanos) {
+            lastNanoTime = nanoTime;
+            checkpoint();
+        }
+    }
+    
+    /**
+     * Copies the state of the game and hands it to the background thread to
+     * write, unless the last copy is still being written. Must be called on
+     * the thread that steps the game, between steps.
+     * @return true if the state was copied, false if the save was skipped
+     */
+    public boolean checkpoint() {
+        synchronized (this) {
+            if (writing || closed) {
+                skipped++;
+                return false;
+            }
+        }
+        //The background thread does not touch the state until told to
+        engine.saveState(state);
+        synchronized (this) {
+            writing = true;
+            notifyAll();
+        }
+        return true;
+    }
+    
+    /**
+     * Writes each copy of the state as it is handed over until closed
+     */
+    @Override
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                while (!writing && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (!writing) {
+                    return;
+                }
+            }
+            try {
+                write();
+            } catch (IOException ex) {
+                //The next save may work, so keep the game going
+                System.err.println("Could not save game: " + ex.getMessage());
+            }
+            synchronized (this) {
+                writing = false;
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Writes the state into the mapping of the file holding the older save,
+     * mapping more of the file if the state has grown too large for it
+     * @throws IOException if the file cannot be written
+     */
+    private void write() throws IOException {
+        long size = state.getSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Game is too large to save: " + size + " bytes");
+        }
+        state.saveNumber = saveNumber + 1;
+        int slot = state.saveNumber & 1;
+        MappedByteBuffer buffer = buffers[slot];
+        if (buffer == null || buffer.capacity() < size) {
+            //Map more than is needed so a growing snake does not have to be
+            //mapped again for every apple
+            buffer = channels[slot].map(FileChannel.MapMode.READ_WRITE, 0, Math.min(Integer.MAX_VALUE, 2 * size));
+            buffers[slot] = buffer;
+        }
+        state.writeTo(buffer);
+        buffer.force();
+        //Only move on once the save is on the disk, so a failed save is
+        //written over rather than the good one
+        saveNumber = state.saveNumber;
+        saves++;
+    }
+    
+    /**
+     * Closes both files, carrying on past a file that fails to close
+     * @throws IOException if a file cannot be closed
+     */
+    private void closeChannels() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Waits for any save in progress, saves the game one last time on the
+     * calling thread and stops the background thread. The game must not be
+     * stepped while this runs.
+     * @throws IOException if the last save fails
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            while (writing) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            engine.saveState(state);
+            write();
+        } finally {
+            closeChannels();
+        }
+    }
+    
+    /**
+     * Gets the number of times the game has been saved
+     * @return the number of saves
+     */
+    public long getSaves() {
+        return saves;
+    }
+    
+    /**
+     * Gets the number of saves that were skipped because the one before was
+     * still being written
+     * @return the number of skipped saves
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+}
@@ -1,10 +1,12 @@
 package snake;
 
 /**
- * Stores x and y coordinates
+ * Stores x and y coordinates. Code on hot paths can instead use a pair of
+ * coordinates packed into a single long with the static helpers, which avoids
+ * creating an object for every position.
  * @author Ashley Allen
  */
-public class Coordinates {
+public final class Coordinates {
     private final int x;
     private final int y;
     
@@ -35,16 +37,75 @@ public class Coordinates {
     
     /**
      * Checks whether two coordinate objects are equal
-     * @param coords the coordinates to check against
-     * @return true if their x and y values are equal
+     * @param obj the coordinates to check against
+     * @return true if obj is a Coordinates object with equal x and y values
      */
-    public boolean equals(Coordinates coords) {
-        if (coords == null) {
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Coordinates)) {
             return false;
         }
+        Coordinates coords = (Coordinates) obj;
         return this.x == coords.x && this.y == coords.y;
     }
     
+    @Override
+    public int hashCode() {
+        return 31 * x + y;
+    }
+    
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ")";
+    }
+    
+    /**
+     * Gets these coordinates packed into a single long
+     * @return the packed coordinates
+     */
+    public long packed() {
+        return pack(x, y);
+    }
+    
+    /**
+     * Packs a coordinate pair into a single long. Negative coordinates are
+     * allowed so positions just outside the grid can be represented.
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the packed coordinates
+     */
+    public static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Gets the x coordinate of a packed coordinate pair
+     * @param pos the packed coordinates
+     * @return the x coordinate
+     */
+    public static int x(long pos) {
+        return (int) (pos >> 32);
+    }
+    
+    /**
+     * Gets the y coordinate of a packed coordinate pair
+     * @param pos the packed coordinates
+     * @return the y coordinate
+     */
+    public static int y(long pos) {
+        return (int) pos;
+    }
+    
+    /**
+     * Moves a packed coordinate pair one step in the specified direction
+     * @param pos the packed coordinates
+     * @param dir the direction to move in
+     * @return the packed coordinates after moving
+     */
+    public static long step(long pos, Direction dir) {
+        return pack(x(pos) + dir.getDx(), y(pos) + dir.getDy());
+    }
+    
     /**
      * Returns coordinates after adding the specified values to the x and y
      * coordinates
@@ -0,0 +1,82 @@
+package snake;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out a single shared Coordinates object for each cell of a grid so that
+ * code working with Coordinates objects does not create new garbage for every
+ * position. Rows are only created once one of their cells is first used.
+ * Positions outside the grid are not cached, and nor is anything on grids so
+ * large that caching every cell could take up more memory than the garbage
+ * it saves.
+ * @author Ashley Allen
+ */
+public class CoordinatesCache {
+    //Caches only depend on the grid size so they are shared between games
+    private static final Map<Long, CoordinatesCache> caches = new ConcurrentHashMap<>();
+    
+    //The most cells a grid can have and still be cached
+    public static final int MAX_CACHED_CELLS = 1 << 20;
+    
+    private final int gridWidth, gridHeight;
+    //The rows of cached cells, or null if the grid is too large to cache
+    private final Coordinates[][] rows;
+    
+    /**
+     * Creates a new empty CoordinatesCache
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     */
+    public CoordinatesCache(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.rows = (long) gridWidth * gridHeight <= MAX_CACHED_CELLS ? new Coordinates[gridHeight][] : null;
+    }
+    
+    /**
+     * Gets the shared cache for a grid of the specified size
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     * @return the cache for that grid size
+     */
+    public static CoordinatesCache forGrid(int gridWidth, int gridHeight) {
+        return caches.computeIfAbsent(((long) gridWidth << 32) | gridHeight, key -> new CoordinatesCache(gridWidth, gridHeight));
+    }
+    
+    /**
+     * Gets the Coordinates object for a cell. Coordinates are immutable so if
+     * two threads race to create the same cell both objects are equal and one
+     * of them simply ends up being cached.
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return the cached Coordinates, or a new object if the cell is outside
+     * the grid or the grid is too large to cache
+     */
+    public Coordinates get(int x, int y) {
+        if (rows == null || x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+            return new Coordinates(x, y);
+        }
+        Coordinates[] row = rows[y];
+        if (row == null) {
+            row = new Coordinates[gridWidth];
+            rows[y] = row;
+        }
+        Coordinates coords = row[x];
+        if (coords == null) {
+            coords = new Coordinates(x, y);
+            row[x] = coords;
+        }
+        return coords;
+    }
+    
+    /**
+     * Gets the Coordinates object for a packed coordinate pair
+     * @param pos the packed coordinates
+     * @return the cached Coordinates, or a new object if the cell is outside
+     * the grid
+     */
+    public Coordinates get(long pos) {
+        return get(Coordinates.x(pos), Coordinates.y(pos));
+    }
+}
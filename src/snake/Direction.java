@@ -5,10 +5,46 @@ package snake;
  * @author Ashley Allen
  */
 public enum Direction {
-    NORTH, EAST, SOUTH, WEST;
+    NORTH(0, -1), EAST(1, 0), SOUTH(0, 1), WEST(-1, 0);
     
     private static final Direction[] values = values();
     
+    private final int dx, dy;
+    
+    /**
+     * Creates a Direction that moves by the specified amounts each step
+     * @param dx the change in x coordinate per step
+     * @param dy the change in y coordinate per step
+     */
+    private Direction(int dx, int dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+    
+    /**
+     * Get the change in x coordinate when moving one step in this Direction
+     * @return -1, 0 or 1
+     */
+    public int getDx() {
+        return dx;
+    }
+    
+    /**
+     * Get the change in y coordinate when moving one step in this Direction
+     * @return -1, 0 or 1
+     */
+    public int getDy() {
+        return dy;
+    }
+    
+    /**
+     * Get the Direction pointing the opposite way
+     * @return the opposite Direction
+     */
+    public Direction opposite() {
+        return values[(this.ordinal() + 2) % values.length];
+    }
+    
     /**
      * Get the next Direction in the enum
      * @return the next Direction
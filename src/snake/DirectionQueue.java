@@ -0,0 +1,74 @@
+package snake;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue of directions for passing input from one thread to
+ * another. It is only safe with a single thread offering directions and a
+ * single thread polling them.
+ * @author Ashley Allen
+ */
+public class DirectionQueue {
+    private final Direction[] buffer;
+    private final int mask;
+    
+    //The next position to read, only written by the consumer, and the next
+    //position to write, only written by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    
+    /**
+     * Creates a new empty DirectionQueue
+     * @param capacity the most directions the queue can hold, rounded up to a
+     * power of two
+     */
+    public DirectionQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        buffer = new Direction[size];
+        mask = size - 1;
+    }
+    
+    /**
+     * Adds a direction to the back of the queue. Must only be called by the
+     * producer thread.
+     * @param dir the direction to add
+     * @return true if it was added or false if the queue was full
+     */
+    public boolean offer(Direction dir) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) t & mask] = dir;
+        //Publish the slot to the consumer only after it has been written
+        tail.lazySet(t + 1);
+        return true;
+    }
+    
+    /**
+     * Takes the direction at the front of the queue. Must only be called by
+     * the consumer thread.
+     * @return the direction or null if the queue is empty
+     */
+    public Direction poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int index = (int) h & mask;
+        Direction dir = buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return dir;
+    }
+    
+    /**
+     * Throws away every direction in the queue. Must only be called by the
+     * consumer thread.
+     */
+    public void clear() {
+        while (poll() != null) {
+            //Polling frees each slot for the producer
+        }
+    }
+}
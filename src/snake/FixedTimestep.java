@@ -0,0 +1,85 @@
+package snake;
+
+/**
+ * Works out how many fixed length game ticks should run for each rendered
+ * frame. Time that has passed but is not yet long enough for a whole tick is
+ * carried over to the next frame instead of being thrown away, and if frames
+ * arrive late the missed ticks are caught up on, up to a limit.
+ * @author Ashley Allen
+ */
+public class FixedTimestep {
+    private final int maxTicksPerFrame;
+    private long tickNanos;
+    
+    private long lastNanoTime = -1;
+    private long accumulator = 0;
+    
+    /**
+     * Creates a new FixedTimestep
+     * @param ticksPerSecond the number of ticks to run each second
+     * @param maxTicksPerFrame the most ticks to run for a single frame when
+     * catching up, after which any remaining time is dropped
+     */
+    public FixedTimestep(double ticksPerSecond, int maxTicksPerFrame) {
+        this.maxTicksPerFrame = maxTicksPerFrame;
+        setTicksPerSecond(ticksPerSecond);
+    }
+    
+    /**
+     * Adds the time since the previous frame and takes as many whole ticks
+     * out of it as are due
+     * @param nanoTime the time of the current frame in nanoseconds
+     * @return the number of ticks to run before rendering this frame
+     */
+    public int advance(long nanoTime) {
+        if (lastNanoTime >= 0) {
+            accumulator += nanoTime - lastNanoTime;
+        }
+        lastNanoTime = nanoTime;
+        
+        long ticks = accumulator / tickNanos;
+        if (ticks > maxTicksPerFrame) {
+            //Too far behind to catch up so keep only the partial tick
+            ticks = maxTicksPerFrame;
+            accumulator %= tickNanos;
+        } else {
+            accumulator -= ticks * tickNanos;
+        }
+        return (int) ticks;
+    }
+    
+    /**
+     * Gets how far the game is between the last tick and the next one, used to
+     * interpolate movement when rendering
+     * @return a value from 0 up to but not including 1
+     */
+    public double getAlpha() {
+        return (double) accumulator / tickNanos;
+    }
+    
+    /**
+     * Gets how long it will be until the next tick is due, measured from the
+     * last time passed to advance
+     * @return the time until the next tick in nanoseconds
+     */
+    public long getNanosUntilNextTick() {
+        return tickNanos - accumulator;
+    }
+    
+    /**
+     * Changes the tick rate, keeping any time already carried over
+     * @param ticksPerSecond the number of ticks to run each second
+     */
+    public final void setTicksPerSecond(double ticksPerSecond) {
+        tickNanos = Math.max(1, (long) (1_000_000_000 / ticksPerSecond));
+        accumulator = Math.min(accumulator, tickNanos - 1);
+    }
+    
+    /**
+     * Gets the tick rate
+     * @return the number of ticks run each second
+     */
+    public double getTicksPerSecond() {
+        return 1_000_000_000.0 / tickNanos;
+    }
+}
@@ -0,0 +1,154 @@
+package snake;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The set of grid cells not covered by the snake, stored so that cells can be
+ * added, removed and picked at random in constant time without allocating.
+ * The first size entries of a dense array hold the free cells and a second
+ * array records where in the dense array each cell is, so removing a cell
+ * only needs it to be swapped with the last free cell.
+ * @author Ashley Allen
+ */
+public class FreeCellSet {
+    private final int[] cells;
+    private final int[] index;
+    private int size;
+    
+    /**
+     * Creates a new FreeCellSet in which every cell is free
+     * @param cellCount the number of cells in the grid
+     */
+    public FreeCellSet(int cellCount) {
+        cells = new int[cellCount];
+        index = new int[cellCount];
+        clear();
+    }
+    
+    /**
+     * Marks every cell as free
+     */
+    public final void clear() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i;
+            index[i] = i;
+        }
+        size = cells.length;
+    }
+    
+    /**
+     * Makes this set hold the same free cells in the same order as another
+     * set for a grid of the same size
+     * @param other the set to copy
+     */
+    public void copyFrom(FreeCellSet other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.index, 0, index, 0, index.length);
+        size = other.size;
+    }
+    
+    /**
+     * Copies the dense array of cells into another array. Together with the
+     * size this is everything needed to restore the set with the free cells
+     * in the same order, so that the same random numbers pick the same cells.
+     * @param dest the array to copy into, with one entry for every cell
+     */
+    public void copyCells(int[] dest) {
+        System.arraycopy(cells, 0, dest, 0, cells.length);
+    }
+    
+    /**
+     * Restores the set from cells copied with copyCells
+     * @param source the dense array of cells, which must hold every cell of
+     * the grid exactly once
+     * @param size the number of free cells at the start of the array
+     * @throws IllegalArgumentException if the cells are not valid
+     */
+    public void restore(int[] source, int size) {
+        if (size < 0 || size > cells.length) {
+            throw new IllegalArgumentException("Invalid number of free cells: " + size);
+        }
+        Arrays.fill(index, -1);
+        for (int i = 0; i < cells.length; i++) {
+            int cell = source[i];
+            if (cell < 0 || cell >= cells.length || index[cell] >= 0) {
+                throw new IllegalArgumentException("Invalid or repeated cell: " + cell);
+            }
+            cells[i] = cell;
+            index[cell] = i;
+        }
+        this.size = size;
+    }
+    
+    /**
+     * Checks whether a cell is free
+     * @param cell the index of the cell
+     * @return true if the cell is free
+     */
+    public boolean contains(int cell) {
+        return index[cell] < size;
+    }
+    
+    /**
+     * Marks a cell as free
+     * @param cell the index of the cell
+     */
+    public void add(int cell) {
+        if (contains(cell)) {
+            return;
+        }
+        //Swap the cell with the first cell that is not free and grow the set
+        //to include it
+        swap(index[cell], size);
+        size++;
+    }
+    
+    /**
+     * Marks a cell as no longer free
+     * @param cell the index of the cell
+     */
+    public void remove(int cell) {
+        if (!contains(cell)) {
+            return;
+        }
+        //Swap the cell with the last free cell and shrink the set to exclude it
+        size--;
+        swap(index[cell], size);
+    }
+    
+    /**
+     * Swaps two positions of the dense array, keeping the index up to date
+     * @param i the first position
+     * @param j the second position
+     */
+    private void swap(int i, int j) {
+        int a = cells[i];
+        int b = cells[j];
+        cells[i] = b;
+        index[b] = i;
+        cells[j] = a;
+        index[a] = j;
+    }
+    
+    /**
+     * Picks a free cell uniformly at random
+     * @param random the random number generator to use
+     * @return the index of the cell
+     * @throws IllegalStateException if there are no free cells
+     */
+    public int random(Random random) {
+        if (size == 0) {
+            throw new IllegalStateException("There are no free cells");
+        }
+        return cells[random.nextInt(size)];
+    }
+    
+    /**
+     * Gets the number of free cells
+     * @return the number of free cells
+     */
+    public int size() {
+        return size;
+    }
+}
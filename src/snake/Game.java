@@ -0,0 +1,67 @@
+package snake;
+
+/**
+ * The rules and state of a game of snake independent of how it is displayed
+ * or controlled. Implementations must not depend on a graphics toolkit so that
+ * games can be simulated headless.
+ * @author Ashley Allen
+ */
+public interface Game {
+    
+    /**
+     * Advances the game by a single tick
+     * @return what happened to the snake during the tick
+     */
+    StepResult step();
+    
+    /**
+     * Asks the snake to turn in the specified direction before the next tick
+     * @param dir the direction to turn in
+     */
+    void changeDirection(Direction dir);
+    
+    /**
+     * Gets the snake
+     * @return the snake
+     */
+    Snake getSnake();
+    
+    /**
+     * Gets the position of the apple
+     * @return the position of the apple
+     */
+    Coordinates getApple();
+    
+    /**
+     * Gets the number of apples that have been placed on the grid, which
+     * changes whenever a new apple appears
+     * @return the number of apples placed so far
+     */
+    long getApplesSpawned();
+    
+    /**
+     * Gets the seed the current game was started with. A new GameEngine
+     * created with this seed and the same starting snake plays the same game
+     * from its start given the same turns.
+     * @return the seed of the current game
+     */
+    long getGameSeed();
+    
+    /**
+     * Gets the score of the current game
+     * @return the score
+     */
+    int getScore();
+    
+    /**
+     * Gets the width of the game grid
+     * @return the width of the game grid
+     */
+    int getGridWidth();
+    
+    /**
+     * Gets the height of the game grid
+     * @return the height of the game grid
+     */
+    int getGridHeight();
+}
@@ -0,0 +1,504 @@
+package snake;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The settings a game is started with, read from command line arguments of
+ * the form --name=value and optionally from a properties file given with
+ * --config=<file>. Arguments take priority over the file and anything not
+ * set by either takes its default value. A setting given as --name on its
+ * own is set to true.
+ *
+ * This class does not use JavaFX so that headless runs never load it.
+ * @author Ashley Allen
+ */
+public class GameConfig {
+    //The port a server listens on unless another is given
+    public static final int DEFAULT_PORT = 7777;
+    
+    //The names of every setting, so that misspelt ones are reported rather
+    //than silently ignored
+    private static final Set<String> NAMES = new HashSet<>(Arrays.asList(
+            "config", "width", "height", "cellSize", "startLength", "startDirection",
+            "ticksPerSecond", "maxTicksPerSecond", "seed", "strategy", "auto",
+            "headless", "ticks", "renderer", "record", "snakes", "apples", "threads",
+            "serve", "port", "save", "checkpointSeconds", "leaderboard"));
+    
+    private final int gridWidth, gridHeight;
+    private final int cellSize;
+    private final int startLength;
+    private final Direction startDirection;
+    private final double ticksPerSecond;
+    private final double maxTicksPerSecond;
+    private final long seed;
+    private final AutopilotStrategy strategy;
+    private final boolean auto;
+    private final boolean headless;
+    private final long ticks;
+    private final String renderer;
+    private final String recordFile;
+    private final int snakes;
+    private final int apples;
+    private final int threads;
+    private final boolean serve;
+    private final int port;
+    private final String saveFile;
+    private final double checkpointSeconds;
+    private final String leaderboardFile;
+    
+    /**
+     * Creates a new GameConfig from a set of properties, using the default
+     * for any that are missing
+     * @param properties the settings by name
+     * @throws IllegalArgumentException if a setting is unknown or invalid
+     */
+    public GameConfig(Properties properties) {
+        for (String name : properties.stringPropertyNames()) {
+            if (!NAMES.contains(name)) {
+                throw new IllegalArgumentException("Unknown setting: " + name);
+            }
+        }
+        gridWidth = getInt(properties, "width", 50);
+        gridHeight = getInt(properties, "height", 50);
+        cellSize = getInt(properties, "cellSize", 20);
+        startLength = getInt(properties, "startLength", GameEngine.DEFAULT_START_LENGTH);
+        startDirection = getEnum(properties, "startDirection", Direction.class, GameEngine.DEFAULT_START_DIRECTION);
+        ticksPerSecond = getDouble(properties, "ticksPerSecond", 20);
+        maxTicksPerSecond = getDouble(properties, "maxTicksPerSecond", 960);
+        seed = properties.containsKey("seed") ? getLong(properties, "seed", 0) : System.nanoTime();
+        strategy = getEnum(properties, "strategy", AutopilotStrategy.class, AutopilotStrategy.PATH);
+        auto = getBoolean(properties, "auto", false);
+        headless = getBoolean(properties, "headless", false);
+        ticks = getLong(properties, "ticks", 100_000);
+        renderer = properties.getProperty("renderer", "canvas");
+        recordFile = properties.getProperty("record");
+        snakes = getInt(properties, "snakes", 0);
+        apples = getInt(properties, "apples", Math.max(1, snakes / 2));
+        threads = getInt(properties, "threads", Runtime.getRuntime().availableProcessors());
+        serve = getBoolean(properties, "serve", false);
+        port = getInt(properties, "port", DEFAULT_PORT);
+        saveFile = properties.getProperty("save");
+        checkpointSeconds = getDouble(properties, "checkpointSeconds", 10);
+        leaderboardFile = properties.getProperty("leaderboard");
+        
+        if (gridWidth < 2 || gridHeight < 2) {
+            throw new IllegalArgumentException("The grid must be at least 2x2 but was " + gridWidth + "x" + gridHeight);
+        }
+        if ((long) gridWidth * gridHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The grid must have no more than " + Integer.MAX_VALUE + " cells but was " + gridWidth + "x" + gridHeight);
+        }
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("cellSize must be at least 1 but was " + cellSize);
+        }
+        if (ticksPerSecond <= 0 || maxTicksPerSecond < ticksPerSecond) {
+            throw new IllegalArgumentException("ticksPerSecond must be positive and no more than maxTicksPerSecond");
+        }
+        if (ticks < 0) {
+            throw new IllegalArgumentException("ticks must not be negative but was " + ticks);
+        }
+        if (!renderer.equals("canvas") && !renderer.equals("pixel")) {
+            throw new IllegalArgumentException("renderer must be canvas or pixel but was " + renderer);
+        }
+        if (snakes < 0 || apples < 1 || threads < 1) {
+            throw new IllegalArgumentException("snakes must not be negative and apples and threads must be at least 1");
+        }
+        if (serve && snakes == 0) {
+            throw new IllegalArgumentException("A server needs an arena, so snakes must be given");
+        }
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("port must be from 0 to 65535 but was " + port);
+        }
+        if (checkpointSeconds <= 0) {
+            throw new IllegalArgumentException("checkpointSeconds must be positive but was " + checkpointSeconds);
+        }
+        //A replay has to start from the start of a game and only the game
+        //with one snake can be saved
+        if (saveFile != null && (recordFile != null || snakes > 0)) {
+            throw new IllegalArgumentException("save cannot be used with record or in an arena");
+        }
+        if (leaderboardFile != null && snakes > 0) {
+            throw new IllegalArgumentException("leaderboard cannot be used in an arena");
+        }
+        //The snake is laid out behind its head in the middle of the grid, so
+        //its tail has to fit in the grid too
+        int tailX = getStartX() - startDirection.getDx() * (startLength - 1);
+        int tailY = getStartY() - startDirection.getDy() * (startLength - 1);
+        if (startLength < 1 || tailX < 0 || tailX >= gridWidth || tailY < 0 || tailY >= gridHeight) {
+            throw new IllegalArgumentException("A snake of length " + startLength + " moving " + startDirection + " does not fit a " + gridWidth + "x" + gridHeight + " grid");
+        }
+    }
+    
+    /**
+     * Reads the settings from command line arguments and from the properties
+     * file named by the config argument if there is one
+     * @param args the command line arguments
+     * @return the settings
+     * @throws IOException if the properties file cannot be read
+     * @throws IllegalArgumentException if an argument or setting is invalid
+     */
+    public static GameConfig fromArgs(String... args) throws IOException {
+        Properties arguments = new Properties();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --name=value but was " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                arguments.setProperty(arg.substring(2), "true");
+            } else {
+                arguments.setProperty(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        
+        Properties properties = new Properties();
+        String file = arguments.getProperty("config");
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(Paths.get(file))) {
+                properties.load(reader);
+            }
+        }
+        properties.putAll(arguments);
+        return new GameConfig(properties);
+    }
+    
+    //Each of these reads one setting, returning the default if it is missing
+    //and naming the setting in the exception if it cannot be read
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        long value = getLong(properties, name, defaultValue);
+        if (value != (int) value) {
+            throw new IllegalArgumentException(name + " is too large: " + value);
+        }
+        return (int) value;
+    }
+    
+    private static long getLong(Properties properties, String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " must be a whole number but was " + value);
+        }
+    }
+    
+    private static double getDouble(Properties properties, String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " must be a number but was " + value);
+        }
+    }
+    
+    private static boolean getBoolean(Properties properties, String name, boolean defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value.trim().equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException(name + " must be true or false but was " + value);
+    }
+    
+    private static <E extends Enum<E>> E getEnum(Properties properties, String name, Class<E> type, E defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(name + " must be one of " + Arrays.toString(type.getEnumConstants()) + " but was " + value);
+        }
+    }
+    
+    /**
+     * Creates a new game with these settings, or carries on the game in the
+     * save file if there is one, in which case the settings the saved game
+     * was created with are used instead. If the save cannot be carried on
+     * from a warning is printed and a new game is started.
+     * @return the new game
+     */
+    public GameEngine createEngine() {
+        if (saveFile != null) {
+            try {
+                GameState state = GameState.loadLatest(Paths.get(saveFile));
+                if (state != null) {
+                    return state.createEngine();
+                }
+            } catch (IOException | IllegalArgumentException ex) {
+                //Losing the saved game is better than not being able to play
+                System.err.println("Could not carry on from the save file, starting a new game: " + ex.getMessage());
+            }
+        }
+        return new GameEngine(gridWidth, gridHeight, seed, getStartX(), getStartY(), startLength, startDirection);
+    }
+    
+    /**
+     * Creates a checkpointer that saves a game to the save file every
+     * checkpointSeconds
+     * @param engine the game to save
+     * @return the checkpointer, or null if there is no save file
+     * @throws IOException if the save file cannot be opened
+     */
+    public Checkpointer createCheckpointer(GameEngine engine) throws IOException {
+        if (saveFile == null) {
+            return null;
+        }
+        return new Checkpointer(engine, Paths.get(saveFile), (long) (checkpointSeconds * 1e9));
+    }
+    
+    /**
+     * Creates a new simulation of a game with these settings, already in
+     * automatic mode if that was asked for
+     * @param game the game to run
+     * @return the new simulation
+     */
+    public GameSimulation createSimulation(Game game) {
+        GameSimulation simulation = new GameSimulation(game, ticksPerSecond);
+        simulation.setStrategy(strategy);
+        if (auto) {
+            simulation.toggleAuto();
+        }
+        return simulation;
+    }
+    
+    /**
+     * Opens the leaderboard file, creating it if it does not exist
+     * @return the leaderboard, or null if there is no leaderboard file
+     * @throws IOException if the leaderboard file cannot be read or written
+     */
+    public Leaderboard createLeaderboard() throws IOException {
+        return leaderboardFile != null ? new Leaderboard(Paths.get(leaderboardFile), Leaderboard.DEFAULT_CAPACITY) : null;
+    }
+    
+    /**
+     * Creates a new arena with these settings. Only the first snake is
+     * steered by the player, and only if there is a window.
+     * @return the new arena
+     */
+    public Arena createArena() {
+        return new Arena(gridWidth, gridHeight, snakes, apples, startLength, seed, threads, !headless && !serve);
+    }
+    
+    /**
+     * Gets the width of the game grid
+     * @return the width in cells
+     */
+    public int getGridWidth() {
+        return gridWidth;
+    }
+    
+    /**
+     * Gets the height of the game grid
+     * @return the height in cells
+     */
+    public int getGridHeight() {
+        return gridHeight;
+    }
+    
+    /**
+     * Gets the size of each cell of the grid on screen
+     * @return the size of a cell in pixels
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+    
+    /**
+     * Gets the x coordinate of the head of each new snake, the middle of the
+     * grid
+     * @return the starting x coordinate
+     */
+    public int getStartX() {
+        return gridWidth / 2;
+    }
+    
+    /**
+     * Gets the y coordinate of the head of each new snake, the middle of the
+     * grid
+     * @return the starting y coordinate
+     */
+    public int getStartY() {
+        return gridHeight / 2;
+    }
+    
+    /**
+     * Gets the length of each new snake
+     * @return the starting length
+     */
+    public int getStartLength() {
+        return startLength;
+    }
+    
+    /**
+     * Gets the direction each new snake starts moving in
+     * @return the starting direction
+     */
+    public Direction getStartDirection() {
+        return startDirection;
+    }
+    
+    /**
+     * Gets the number of ticks run each second at the start
+     * @return the starting ticks per second
+     */
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+    
+    /**
+     * Gets the fastest the game can be sped up to with the plus key
+     * @return the maximum ticks per second
+     */
+    public double getMaxTicksPerSecond() {
+        return maxTicksPerSecond;
+    }
+    
+    /**
+     * Gets the seed for the random number generator that places apples,
+     * which is the time the settings were read unless one was given
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+    
+    /**
+     * Gets the strategy the autopilot starts with
+     * @return the autopilot strategy
+     */
+    public AutopilotStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * Checks whether the game starts in automatic mode
+     * @return true if the autopilot steers from the start
+     */
+    public boolean isAuto() {
+        return auto;
+    }
+    
+    /**
+     * Checks whether the game runs without a window, as fast as it can with
+     * the autopilot steering
+     * @return true if the game is headless
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+    
+    /**
+     * Gets the number of ticks a headless game runs for
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    /**
+     * Gets the name of the renderer to draw with, canvas or pixel
+     * @return the name of the renderer
+     */
+    public String getRenderer() {
+        return renderer;
+    }
+    
+    /**
+     * Gets the file to record a replay to
+     * @return the name of the file, or null to not record
+     */
+    public String getRecordFile() {
+        return recordFile;
+    }
+    
+    /**
+     * Checks whether to play in an arena with many snakes rather than the
+     * usual game with one
+     * @return true if there are any snakes in the arena
+     */
+    public boolean isArena() {
+        return snakes > 0;
+    }
+    
+    /**
+     * Gets the number of snakes in the arena, including the player
+     * @return the number of snakes, or 0 for the usual game
+     */
+    public int getSnakes() {
+        return snakes;
+    }
+    
+    /**
+     * Gets the number of apples kept in the arena
+     * @return the number of apples
+     */
+    public int getApples() {
+        return apples;
+    }
+    
+    /**
+     * Checks whether to host the arena for players to connect to rather than
+     * open a window
+     * @return true if the arena is served
+     */
+    public boolean isServe() {
+        return serve;
+    }
+    
+    /**
+     * Gets the port a server listens on
+     * @return the port, or 0 for any free port
+     */
+    public int getPort() {
+        return port;
+    }
+    
+    /**
+     * Gets the file the game is saved to and carried on from
+     * @return the name of the file, or null to not save
+     */
+    public String getSaveFile() {
+        return saveFile;
+    }
+    
+    /**
+     * Gets the time between saves of the game
+     * @return the time between saves in seconds
+     */
+    public double getCheckpointSeconds() {
+        return checkpointSeconds;
+    }
+    
+    /**
+     * Gets the file finished games are added to
+     * @return the name of the file, or null to not keep a leaderboard
+     */
+    public String getLeaderboardFile() {
+        return leaderboardFile;
+    }
+    
+    /**
+     * Gets the number of threads the arena picks moves on
+     * @return the number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+}
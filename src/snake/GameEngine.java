@@ -0,0 +1,516 @@
+package snake;
+
+/**
+ * The headless implementation of the game rules. Holds the snake, the apple
+ * and the score and calculates each new game state without any reference to
+ * graphics or keyboard input.
+ * @author Ashley Allen
+ */
+public class GameEngine implements Game {
+    //The snake used by default, placed at the centre of the grid
+    public static final int DEFAULT_START_LENGTH = 5;
+    public static final Direction DEFAULT_START_DIRECTION = Direction.WEST;
+    
+    //Grids with more cells than this place apples by picking cells at random
+    //until a free one turns up rather than keeping a set of the free cells,
+    //which would need eight bytes for every cell of the grid
+    public static final int MAX_FREE_CELL_SET_CELLS = 1 << 20;
+    
+    //The number of random picks to make before searching for a free cell
+    private static final int MAX_APPLE_TRIES = 64;
+    
+    private final int gridWidth, gridHeight;
+    private final long seed;
+    private final int startX, startY, startLength;
+    private final Direction startDirection;
+    private final GameRandom random;
+    //The free cells, or null if the grid is too large to keep them
+    private final FreeCellSet freeCells;
+    private final CoordinatesCache cache;
+    
+    private int score = 0;
+    private long applesSpawned = 0;
+    //The seed the current game was started with, which replays it in a new
+    //engine
+    private long gameSeed;
+    
+    private Snake snake;
+    private Coordinates apple;
+    
+    //Where to record how long each part of a step takes, or null to not
+    //time steps at all
+    private GameMetrics metrics;
+    
+    /**
+     * Initialises a new GameEngine with the specified grid size and immediately
+     * creates a new game state.
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param seed the seed for the random number generator that places apples
+     */
+    public GameEngine(int gridWidth, int gridHeight, long seed) {
+        this(gridWidth, gridHeight, seed, gridWidth / 2, gridHeight / 2, DEFAULT_START_LENGTH, DEFAULT_START_DIRECTION);
+    }
+    
+    /**
+     * Initialises a new GameEngine with the specified grid size and starting
+     * snake and immediately creates a new game state.
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param seed the seed for the random number generator that places apples
+     * @param startX the x coordinate of the head of each new snake
+     * @param startY the y coordinate of the head of each new snake
+     * @param startLength the length of each new snake
+     * @param startDirection the direction each new snake starts moving in
+     * @throws IllegalArgumentException if the grid has more cells than an int
+     * can count
+     */
+    public GameEngine(int gridWidth, int gridHeight, long seed, int startX, int startY, int startLength, Direction startDirection) {
+        this(gridWidth, gridHeight, seed, startX, startY, startLength, startDirection, (long) gridWidth * gridHeight <= MAX_FREE_CELL_SET_CELLS);
+    }
+    
+    /**
+     * Initialises a new GameEngine that may leave out the set of free cells
+     * even on a small grid and place apples by picking cells at random. Such
+     * an engine places apples in other places than a normal one but copying
+     * a game into it takes time that depends on the snake, not the grid.
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param seed the seed for the random number generator that places apples
+     * @param startX the x coordinate of the head of each new snake
+     * @param startY the y coordinate of the head of each new snake
+     * @param startLength the length of each new snake
+     * @param startDirection the direction each new snake starts moving in
+     * @param keepFreeCells false to leave out the set of free cells
+     * @throws IllegalArgumentException if the grid has more cells than an int
+     * can count
+     */
+    GameEngine(int gridWidth, int gridHeight, long seed, int startX, int startY, int startLength, Direction startDirection, boolean keepFreeCells) {
+        //Cells are numbered with ints, so a larger grid would wrap around
+        if ((long) gridWidth * gridHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A grid of " + gridWidth + "x" + gridHeight + " is too large");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.seed = seed;
+        this.startX = startX;
+        this.startY = startY;
+        this.startLength = startLength;
+        this.startDirection = startDirection;
+        this.random = new GameRandom(seed);
+        this.freeCells = keepFreeCells && (long) gridWidth * gridHeight <= MAX_FREE_CELL_SET_CELLS ? new FreeCellSet(gridWidth * gridHeight) : null;
+        this.cache = CoordinatesCache.forGrid(gridWidth, gridHeight);
+        
+        startGame(seed);
+    }
+    
+    /**
+     * Initialise the game. Every game is started from its own seed with every
+     * cell free in the same order as in a new engine, so a new engine created
+     * with that seed plays the same game given the same turns.
+     * @param gameSeed the seed for the apples of the game
+     */
+    private void startGame(long gameSeed) {
+        this.gameSeed = gameSeed;
+        random.setSeed(gameSeed);
+        createSnake();
+        createApple();
+        score = 0;
+    }
+    
+    /**
+     * Create a new snake at the starting position, reusing the old snake and
+     * its buffers if there is one
+     */
+    private void createSnake() {
+        if (snake == null) {
+            snake = new Snake(cache.get(startX, startY), startLength, startDirection, gridWidth, gridHeight);
+        } else {
+            //The free cells have to be put back in order rather than just
+            //handing back the old snake's cells, or apples would appear in
+            //other places than in a new engine
+            if (freeCells != null) {
+                freeCells.clear();
+            }
+            snake.reset(cache.get(startX, startY), startLength, startDirection);
+        }
+        for (int i = 0; i < snake.getLength(); i++) {
+            removeFreeCell(snake.getBodyX(i), snake.getBodyY(i));
+        }
+    }
+    
+    /**
+     * Create the apple at a random location on the game grid other than where
+     * the snake is. The location is picked directly from the free cells so it
+     * takes the same time however much of the grid the snake covers.
+     */
+    private void createApple() {
+        int cell = freeCells != null ? freeCells.random(random) : randomFreeCell();
+        apple = cache.get(cell % gridWidth, cell / gridWidth);
+        applesSpawned++;
+    }
+    
+    /**
+     * Picks a free cell on a grid too large to keep a set of free cells. On
+     * such a grid the snake almost always covers a tiny fraction of it, so a
+     * random cell is nearly always free. If several picks in a row are not
+     * the grid is searched from a random cell instead.
+     * @return the index of a free cell
+     */
+    private int randomFreeCell() {
+        int cells = gridWidth * gridHeight;
+        for (int i = 0; i < MAX_APPLE_TRIES; i++) {
+            int cell = random.nextInt(cells);
+            if (!snake.isOccupied(cell % gridWidth, cell / gridWidth)) {
+                return cell;
+            }
+        }
+        //Step the cell rather than adding to the start, which could wrap
+        //around on the largest grids
+        int cell = random.nextInt(cells);
+        for (int i = 0; i < cells; i++) {
+            if (!snake.isOccupied(cell % gridWidth, cell / gridWidth)) {
+                return cell;
+            }
+            cell = cell == cells - 1 ? 0 : cell + 1;
+        }
+        throw new IllegalStateException("There are no free cells");
+    }
+    
+    /**
+     * Marks a cell that the snake has left as free. Cells outside the grid are
+     * ignored.
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     */
+    private void addFreeCell(int x, int y) {
+        if (freeCells != null && x >= 0 && x < gridWidth && y >= 0 && y < gridHeight) {
+            freeCells.add(y * gridWidth + x);
+        }
+    }
+    
+    /**
+     * Marks a cell that the snake has moved into as no longer free. Cells
+     * outside the grid are ignored.
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     */
+    private void removeFreeCell(int x, int y) {
+        if (freeCells != null && x >= 0 && x < gridWidth && y >= 0 && y < gridHeight) {
+            freeCells.remove(y * gridWidth + x);
+        }
+    }
+    
+    /**
+     * Calculates whether the snake has eaten an apple
+     * @return true if the snake's head is in the same position as the apple
+     */
+    private boolean hasEatenApple() {
+        return snake.getBodyX(0) == apple.getX() && snake.getBodyY(0) == apple.getY();
+    }
+    
+    /**
+     * Calculates whether the snake has collided
+     * @return true if the snake has collided with itself or the edge of the
+     * game grid
+     */
+    private boolean hasCollided() {
+        //Has the snake collided with itself?
+        if (snake.hasHitItself()) {
+            return true;
+        }
+        //Has the snake colided with the edge of the game grid?
+        int headX = snake.getBodyX(0);
+        int headY = snake.getBodyY(0);
+        return headX < 0 || headX >= gridWidth || headY < 0 || headY >= gridHeight;
+    }
+    
+    /**
+     * Calculates the next state of the game. First moves the snake then checks
+     * for collisions with itself, the edge of the game grid and the apple. If
+     * the snake has collided or filled the grid a new game is started.
+     * @return what happened to the snake during the tick
+     */
+    @Override
+    public StepResult step() {
+        long start = now();
+        StepResult result = StepResult.MOVED;
+        int last = snake.getLength() - 1;
+        int tailX = snake.getBodyX(last);
+        int tailY = snake.getBodyY(last);
+        boolean growing = snake.isGrowing();
+        snake.move();
+        
+        //Keep the free cells in step with the snake, freeing the old tail
+        //before taking the new head in case the head moved into it
+        if (!growing) {
+            addFreeCell(tailX, tailY);
+        }
+        removeFreeCell(snake.getBodyX(0), snake.getBodyY(0));
+        start = record(Phase.MOVE, start);
+        if (hasEatenApple()) {
+            snake.eatApple();
+            score++;
+            //Once the snake has grown there will be nowhere left for an apple
+            if (snake.getLength() + 1 >= gridWidth * gridHeight) {
+                startGame(random.nextLong());
+                return StepResult.WON;
+            }
+            createApple();
+            start = record(Phase.APPLE, start);
+            result = StepResult.ATE_APPLE;
+        }
+        boolean collided = hasCollided();
+        record(Phase.COLLISION, start);
+        if (collided) {
+            startGame(random.nextLong());
+            result = StepResult.DIED;
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the current time if steps are being timed
+     * @return the value of System.nanoTime(), or 0 if there are no metrics
+     */
+    private long now() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Records the time since the start of a phase of a step if steps are
+     * being timed
+     * @param phase the phase that has just finished
+     * @param start the time the phase started, from now()
+     * @return the time the phase finished, to start timing the next phase
+     */
+    private long record(Phase phase, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        metrics.record(phase, end - start);
+        return end;
+    }
+    
+    /**
+     * Starts or stops timing each phase of every step
+     * @param metrics where to record the timings, or null to stop timing
+     */
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Makes this engine an exact copy of another engine with the same grid
+     * size, so that both carry on identically given the same turns as long as
+     * neither or both keep a set of free cells
+     * @param other the engine to copy
+     * @throws IllegalArgumentException if the other engine is for another
+     * grid size, or this engine keeps free cells and the other does not
+     */
+    public void copyFrom(GameEngine other) {
+        if (other.gridWidth != gridWidth || other.gridHeight != gridHeight) {
+            throw new IllegalArgumentException("Cannot copy a " + other.gridWidth + "x" + other.gridHeight + " game into a " + gridWidth + "x" + gridHeight + " game");
+        }
+        if (freeCells != null && other.freeCells == null) {
+            throw new IllegalArgumentException("Cannot copy a game without free cells into one with them");
+        }
+        random.setState(other.random.getState());
+        if (freeCells != null) {
+            freeCells.copyFrom(other.freeCells);
+        }
+        snake.copyFrom(other.snake);
+        apple = other.apple;
+        score = other.score;
+        applesSpawned = other.applesSpawned;
+        gameSeed = other.gameSeed;
+    }
+    
+    /**
+     * Makes this engine's snake, apple and score the same as those of any
+     * other game with the same grid size. Unlike copyFrom the random number
+     * generator is left alone and the free cells are worked out from the
+     * snake, so apples will not appear where they would in the other game.
+     * Only the cells of the old and new snakes are touched.
+     * @param other the game to copy
+     */
+    public void copyPosition(Game other) {
+        if (other.getGridWidth() != gridWidth || other.getGridHeight() != gridHeight) {
+            throw new IllegalArgumentException("Cannot copy a " + other.getGridWidth() + "x" + other.getGridHeight() + " game into a " + gridWidth + "x" + gridHeight + " game");
+        }
+        for (int i = 0; i < snake.getLength(); i++) {
+            addFreeCell(snake.getBodyX(i), snake.getBodyY(i));
+        }
+        snake.copyFrom(other.getSnake());
+        for (int i = 0; i < snake.getLength(); i++) {
+            removeFreeCell(snake.getBodyX(i), snake.getBodyY(i));
+        }
+        apple = other.getApple();
+        score = other.getScore();
+        applesSpawned = other.getApplesSpawned();
+    }
+    
+    /**
+     * Reseeds the random number generator that places apples, so that copies
+     * of a game can be played on with different apples
+     * @param seed the new seed
+     */
+    public void reseed(long seed) {
+        random.setSeed(seed);
+    }
+    
+    /**
+     * Copies everything needed to carry on the game into a state, reusing
+     * the state's arrays where possible
+     * @param state the state to fill in
+     */
+    public void saveState(GameState state) {
+        state.gridWidth = gridWidth;
+        state.gridHeight = gridHeight;
+        state.seed = seed;
+        state.gameSeed = gameSeed;
+        state.startX = startX;
+        state.startY = startY;
+        state.startLength = startLength;
+        state.startDirection = startDirection;
+        state.randomState = random.getState();
+        state.score = score;
+        state.applesSpawned = applesSpawned;
+        state.apple = apple.packed();
+        state.direction = snake.getDirection();
+        state.growing = snake.isGrowing();
+        state.length = snake.getLength();
+        state.ensureBodyCapacity(state.length);
+        snake.copyBody(state.body);
+        if (freeCells != null) {
+            if (state.freeCells == null || state.freeCells.length != gridWidth * gridHeight) {
+                state.freeCells = new int[gridWidth * gridHeight];
+            }
+            freeCells.copyCells(state.freeCells);
+            state.freeCellCount = freeCells.size();
+        } else {
+            state.freeCells = null;
+        }
+    }
+    
+    /**
+     * Carries on the game from a state saved from a game with the same grid
+     * size
+     * @param state the state to restore
+     * @throws IllegalArgumentException if the state is for another grid size
+     * or is not a valid game
+     */
+    public void restoreState(GameState state) {
+        if (state.gridWidth != gridWidth || state.gridHeight != gridHeight) {
+            throw new IllegalArgumentException("Cannot restore a " + state.gridWidth + "x" + state.gridHeight + " game into a " + gridWidth + "x" + gridHeight + " game");
+        }
+        int appleX = Coordinates.x(state.apple);
+        int appleY = Coordinates.y(state.apple);
+        if (appleX < 0 || appleX >= gridWidth || appleY < 0 || appleY >= gridHeight) {
+            throw new IllegalArgumentException("The apple is outside the grid");
+        }
+        if (freeCells != null) {
+            if (state.freeCells == null) {
+                throw new IllegalArgumentException("The state has no free cells");
+            }
+            freeCells.restore(state.freeCells, state.freeCellCount);
+        }
+        random.setState(state.randomState);
+        snake.restore(state.body, state.length, state.direction, state.growing);
+        apple = cache.get(appleX, appleY);
+        score = state.score;
+        applesSpawned = state.applesSpawned;
+        gameSeed = state.gameSeed;
+    }
+    
+    /**
+     * Creates a new engine that is an exact copy of this one
+     * @return the copy
+     */
+    public GameEngine copy() {
+        GameEngine copy = new GameEngine(gridWidth, gridHeight, seed, startX, startY, startLength, startDirection);
+        copy.copyFrom(this);
+        return copy;
+    }
+    
+    /**
+     * Gets the seed the engine was created with
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+    
+    @Override
+    public long getGameSeed() {
+        return gameSeed;
+    }
+    
+    /**
+     * Gets the x coordinate of the head of each new snake
+     * @return the starting x coordinate
+     */
+    public int getStartX() {
+        return startX;
+    }
+    
+    /**
+     * Gets the y coordinate of the head of each new snake
+     * @return the starting y coordinate
+     */
+    public int getStartY() {
+        return startY;
+    }
+    
+    /**
+     * Gets the length of each new snake
+     * @return the starting length
+     */
+    public int getStartLength() {
+        return startLength;
+    }
+    
+    /**
+     * Gets the direction each new snake starts moving in
+     * @return the starting direction
+     */
+    public Direction getStartDirection() {
+        return startDirection;
+    }
+    
+    @Override
+    public void changeDirection(Direction dir) {
+        snake.changeDirection(dir);
+    }
+    
+    @Override
+    public Snake getSnake() {
+        return snake;
+    }
+    
+    @Override
+    public Coordinates getApple() {
+        return apple;
+    }
+    
+    @Override
+    public long getApplesSpawned() {
+        return applesSpawned;
+    }
+    
+    @Override
+    public int getScore() {
+        return score;
+    }
+    
+    @Override
+    public int getGridWidth() {
+        return gridWidth;
+    }
+    
+    @Override
+    public int getGridHeight() {
+        return gridHeight;
+    }
+}
@@ -0,0 +1,196 @@
+package snake;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timing histograms for a running game. Everything can be
+ * recorded from the simulation and rendering threads at once without locking
+ * and read from any thread, including over JMX once registered.
+ * @author Ashley Allen
+ */
+public class GameMetrics implements GameMetricsMXBean {
+    private static final Phase[] PHASES = Phase.values();
+    
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length];
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder apples = new LongAdder();
+    private final LongAdder deaths = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder replans = new LongAdder();
+    
+    /**
+     * Creates a new GameMetrics with nothing recorded
+     */
+    public GameMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+    
+    /**
+     * Registers these metrics with the platform MBean server under the name
+     * snake:type=GameMetrics
+     * @throws JMException if they cannot be registered, for example because
+     * another GameMetrics already has been
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("snake:type=GameMetrics"));
+    }
+    
+    /**
+     * Records the time taken by a phase
+     * @param phase the phase that was timed
+     * @param nanos the time taken in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        histograms[phase.ordinal()].record(nanos);
+    }
+    
+    /**
+     * Counts a tick and what happened during it
+     * @param result the outcome of the tick
+     */
+    public void countTick(StepResult result) {
+        ticks.increment();
+        switch (result) {
+            case ATE_APPLE:
+                apples.increment();
+                break;
+            case DIED:
+                deaths.increment();
+                break;
+            case WON:
+                //The final apple fills the grid
+                apples.increment();
+                wins.increment();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Counts new paths worked out by an autopilot
+     * @param count the number of new paths
+     */
+    public void countReplans(long count) {
+        replans.add(count);
+    }
+    
+    /**
+     * Gets the histogram of the time taken by a phase
+     * @param phase the phase
+     * @return the histogram
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+    
+    /**
+     * Describes the median, 99th percentile and maximum time of a phase in
+     * microseconds, for showing on screen
+     * @param phase the phase
+     * @return the description
+     */
+    public String summary(Phase phase) {
+        LatencyHistogram histogram = getHistogram(phase);
+        return String.format("%s p50 %.1f p99 %.1f max %.1f us", phase.name().toLowerCase(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0);
+    }
+    
+    @Override
+    public long getTicks() {
+        return ticks.sum();
+    }
+    
+    @Override
+    public long getApples() {
+        return apples.sum();
+    }
+    
+    @Override
+    public long getDeaths() {
+        return deaths.sum();
+    }
+    
+    @Override
+    public long getWins() {
+        return wins.sum();
+    }
+    
+    @Override
+    public long getReplans() {
+        return replans.sum();
+    }
+    
+    @Override
+    public long getTickP50Nanos() {
+        return getHistogram(Phase.TICK).getValueAtPercentile(50);
+    }
+    
+    @Override
+    public long getTickP99Nanos() {
+        return getHistogram(Phase.TICK).getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getTickMaxNanos() {
+        return getHistogram(Phase.TICK).getMax();
+    }
+    
+    @Override
+    public long getFrameP50Nanos() {
+        return getHistogram(Phase.FRAME).getValueAtPercentile(50);
+    }
+    
+    @Override
+    public long getFrameP99Nanos() {
+        return getHistogram(Phase.FRAME).getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getFrameMaxNanos() {
+        return getHistogram(Phase.FRAME).getMax();
+    }
+    
+    @Override
+    public String[] getPhases() {
+        String[] names = new String[PHASES.length];
+        for (int i = 0; i < PHASES.length; i++) {
+            names[i] = PHASES[i].name();
+        }
+        return names;
+    }
+    
+    @Override
+    public long getPercentileNanos(String phase, double percentile) {
+        return getHistogram(Phase.valueOf(phase.toUpperCase())).getValueAtPercentile(percentile);
+    }
+    
+    @Override
+    public double getMeanNanos(String phase) {
+        return getHistogram(Phase.valueOf(phase.toUpperCase())).getMean();
+    }
+    
+    @Override
+    public long getMaxNanos(String phase) {
+        return getHistogram(Phase.valueOf(phase.toUpperCase())).getMax();
+    }
+    
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        ticks.reset();
+        apples.reset();
+        deaths.reset();
+        wins.reset();
+        replans.reset();
+    }
+}
@@ -0,0 +1,108 @@
+package snake;
+
+/**
+ * The management interface of GameMetrics, so that the counters and timings
+ * of a running game can be watched with JConsole or any other JMX client
+ * @author Ashley Allen
+ */
+public interface GameMetricsMXBean {
+    
+    /**
+     * Gets the number of ticks run
+     * @return the number of ticks run
+     */
+    long getTicks();
+    
+    /**
+     * Gets the number of apples eaten
+     * @return the number of apples eaten
+     */
+    long getApples();
+    
+    /**
+     * Gets the number of times the snake has died
+     * @return the number of times the snake has died
+     */
+    long getDeaths();
+    
+    /**
+     * Gets the number of times the snake has filled the grid
+     * @return the number of times the snake has filled the grid
+     */
+    long getWins();
+    
+    /**
+     * Gets the number of new paths the autopilot has worked out
+     * @return the number of new paths the autopilot has worked out
+     */
+    long getReplans();
+    
+    /**
+     * Gets the median time of a tick in nanoseconds
+     * @return the median time of a tick in nanoseconds
+     */
+    long getTickP50Nanos();
+    
+    /**
+     * Gets the 99th percentile time of a tick in nanoseconds
+     * @return the 99th percentile time of a tick in nanoseconds
+     */
+    long getTickP99Nanos();
+    
+    /**
+     * Gets the longest time of a tick in nanoseconds
+     * @return the longest time of a tick in nanoseconds
+     */
+    long getTickMaxNanos();
+    
+    /**
+     * Gets the median time between frames in nanoseconds
+     * @return the median time between frames in nanoseconds
+     */
+    long getFrameP50Nanos();
+    
+    /**
+     * Gets the 99th percentile time between frames in nanoseconds
+     * @return the 99th percentile time between frames in nanoseconds
+     */
+    long getFrameP99Nanos();
+    
+    /**
+     * Gets the longest time between frames in nanoseconds
+     * @return the longest time between frames in nanoseconds
+     */
+    long getFrameMaxNanos();
+    
+    /**
+     * Gets the names of the timed phases
+     * @return the names of every Phase
+     */
+    String[] getPhases();
+    
+    /**
+     * Gets a percentile of the time taken by a phase
+     * @param phase the name of the phase
+     * @param percentile the percentile, from 0 to 100
+     * @return the time in nanoseconds
+     */
+    long getPercentileNanos(String phase, double percentile);
+    
+    /**
+     * Gets the mean time taken by a phase
+     * @param phase the name of the phase
+     * @return the time in nanoseconds
+     */
+    double getMeanNanos(String phase);
+    
+    /**
+     * Gets the longest time taken by a phase
+     * @param phase the name of the phase
+     * @return the time in nanoseconds
+     */
+    long getMaxNanos(String phase);
+    
+    /**
+     * Forgets every timing and counter recorded so far
+     */
+    void reset();
+}
@@ -0,0 +1,57 @@
+package snake;
+
+import java.util.Random;
+
+/**
+ * A random number generator that produces exactly the same numbers as
+ * java.util.Random for the same seed but whose state can be read and restored,
+ * so that a game can be copied or saved part way through and carry on placing
+ * apples in the same places. Unlike Random it is not safe to share between
+ * threads.
+ * @author Ashley Allen
+ */
+@SuppressWarnings("serial")
+public class GameRandom extends Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    
+    //Set by setSeed, which Random's constructor calls before any field
+    //initialisers of this class would run, so it must not have one
+    private long state;
+    
+    /**
+     * Creates a new GameRandom with the specified seed
+     * @param seed the initial seed
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+    
+    @Override
+    public void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+    
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+    
+    /**
+     * Gets the current internal state of the generator
+     * @return the state
+     */
+    public long getState() {
+        return state;
+    }
+    
+    /**
+     * Restores a state previously returned by getState
+     * @param state the state to restore
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
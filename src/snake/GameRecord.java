@@ -0,0 +1,104 @@
+package snake;
+
+import java.util.Comparator;
+
+/**
+ * The result of one finished game as kept on a Leaderboard
+ * @author Ashley Allen
+ */
+public class GameRecord {
+    //Higher scores first, then the games that took fewer ticks, then the
+    //games that finished first
+    public static final Comparator<GameRecord> BEST_FIRST = Comparator.comparingInt(GameRecord::getScore).reversed()
+            .thenComparingLong(GameRecord::getTicks)
+            .thenComparingLong(GameRecord::getTime);
+    
+    private final long time;
+    private final int score;
+    private final int length;
+    private final long ticks;
+    private final long seed;
+    private final AutopilotStrategy strategy;
+    
+    /**
+     * Creates a new GameRecord
+     * @param time when the game finished, in milliseconds since the epoch
+     * @param score the final score
+     * @param length the length of the snake at the end
+     * @param ticks the number of ticks the game lasted
+     * @param seed the seed the game was started with
+     * @param strategy the autopilot strategy that steered the snake, or null
+     * if it was only steered by hand
+     */
+    public GameRecord(long time, int score, int length, long ticks, long seed, AutopilotStrategy strategy) {
+        this.time = time;
+        this.score = score;
+        this.length = length;
+        this.ticks = ticks;
+        this.seed = seed;
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Gets when the game finished
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+    
+    /**
+     * Gets the final score of the game
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+    
+    /**
+     * Gets the length of the snake at the end of the game
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Gets the number of ticks the game lasted
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    /**
+     * Gets the seed the game was started with, which plays the same game in
+     * a new GameEngine given the same turns
+     * @return the seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+    
+    /**
+     * Gets the autopilot strategy that steered the snake during the game
+     * @return the strategy, or null if the snake was only steered by hand
+     */
+    public AutopilotStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * Checks whether the snake was only steered by hand
+     * @return true if the autopilot was never used
+     */
+    public boolean isManual() {
+        return strategy == null;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("score %d, length %d, %d ticks, seed %d, %s",
+                score, length, ticks, seed, strategy != null ? strategy.name().toLowerCase() : "manual");
+    }
+}
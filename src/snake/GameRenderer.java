@@ -0,0 +1,302 @@
+package snake;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Draws snapshots of a game, repainting only the cells that changed since the
+ * last snapshot drawn unless a full redraw is required. Subclasses decide how
+ * cells are actually filled in.
+ *
+ * Rendering is independent of ticking so the same snapshot may be drawn
+ * several times, or several ticks may have passed since the last one.
+ *
+ * Only the cells inside a view of the grid are drawn. When the grid is larger
+ * than the view it follows the snake's head, jumping to centre it whenever it
+ * comes near an edge of the view, so a frame only costs as much as the cells
+ * on screen however large the grid is.
+ * @author Ashley Allen
+ */
+public abstract class GameRenderer {
+    protected static final Color BACKGROUND_COLOR = Color.WHITE;
+    protected static final Color SNAKE_COLOR = Color.GREEN;
+    protected static final Color APPLE_COLOR = Color.RED;
+    
+    protected final int gridWidth, gridHeight;
+    protected final int viewWidth, viewHeight;
+    
+    //The cell of the grid shown at the top left of the view
+    private int viewX = 0, viewY = 0;
+    
+    //The snake, apple and tick count as they were last drawn, used to work
+    //out which cells have changed since, and a buffer for the snake being
+    //drawn that takes the place of the last one afterwards
+    private long[] drawnBody = new long[16];
+    private long[] body = new long[16];
+    private int drawnLength = 0;
+    private Coordinates drawnApple;
+    private long drawnTicks = 0;
+    private long drawnGames = 0;
+    
+    //Whether the whole grid needs to be repainted on the next draw
+    private boolean fullRedraw = true;
+    
+    /**
+     * Initialises a new GameRenderer that shows the whole of a grid of the
+     * specified size
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     */
+    protected GameRenderer(int gridWidth, int gridHeight) {
+        this(gridWidth, gridHeight, gridWidth, gridHeight);
+    }
+    
+    /**
+     * Initialises a new GameRenderer that shows part of a grid of the
+     * specified size
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param viewWidth the number of columns of cells shown, no more than the
+     * width of the grid
+     * @param viewHeight the number of rows of cells shown, no more than the
+     * height of the grid
+     */
+    protected GameRenderer(int gridWidth, int gridHeight, int viewWidth, int viewHeight) {
+        if (viewWidth < 1 || viewWidth > gridWidth || viewHeight < 1 || viewHeight > gridHeight) {
+            throw new IllegalArgumentException("A " + viewWidth + "x" + viewHeight + " view does not fit a " + gridWidth + "x" + gridHeight + " grid");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+    
+    /**
+     * Draws a snapshot of the game. Cells are drawn one colour at a time and
+     * straight lengths of the snake are filled as a single line, so the
+     * amount of work depends on how many times the snake bends rather than on
+     * its length.
+     * @param snapshot the snapshot to draw
+     * @param nanoTime the time of the frame, used to slide the head smoothly
+     * between cells
+     */
+    public void render(GameSnapshot snapshot, long nanoTime) {
+        int length = snapshot.getLength();
+        long ticks = snapshot.getTicks() - drawnTicks;
+        if (body.length < length) {
+            body = new long[Integer.highestOneBit(length) << 1];
+        }
+        for (int i = 0; i < length; i++) {
+            body[i] = snapshot.getBodyPacked(i);
+        }
+        
+        //Moving the view changes where every cell is drawn
+        if (length > 0 && followHead(body[0], snapshot.getGames() != drawnGames)) {
+            fullRedraw = true;
+        }
+        
+        //After a new game has started or if the snake has moved its whole
+        //length it is easier to start again than to work out what changed
+        if (fullRedraw || snapshot.getGames() != drawnGames || ticks >= length) {
+            fillBackground(BACKGROUND_COLOR);
+            fillRuns(SNAKE_COLOR, body, 0, length - 1);
+            fillCell(APPLE_COLOR, snapshot.getApple().packed());
+            fullRedraw = false;
+        } else if (ticks > 0) {
+            int moved = (int) ticks;
+            //Each part of the snake is now moved places further along, so
+            //the old parts past the new length are cells it has left
+            if (Math.max(0, length - moved) < drawnLength) {
+                fillRuns(BACKGROUND_COLOR, drawnBody, Math.max(0, length - moved), drawnLength - 1);
+            }
+            if (!snapshot.getApple().equals(drawnApple)) {
+                fillCell(BACKGROUND_COLOR, drawnApple.packed());
+            }
+            fillCell(APPLE_COLOR, snapshot.getApple().packed());
+            //The new head positions and the cell the head was last drawn
+            //sliding into, which is now behind them
+            fillRuns(SNAKE_COLOR, body, 0, Math.min(moved, length - 1));
+        }
+        
+        if (snapshot.hasMoved() && length > 1) {
+            double alpha = 1;
+            if (!snapshot.isPaused()) {
+                alpha = (double) (nanoTime - snapshot.getTickNanoTime()) / snapshot.getTickNanos();
+                alpha = Math.max(0, Math.min(1, alpha));
+            }
+            if (inView(body[1]) && inView(body[0])) {
+                drawMovingHead(toView(body[1]), toView(body[0]), alpha);
+            }
+        }
+        finishFrame();
+        
+        //Keep this snapshot's snake to compare the next one against
+        long[] swap = drawnBody;
+        drawnBody = body;
+        body = swap;
+        drawnLength = length;
+        drawnApple = snapshot.getApple();
+        drawnTicks = snapshot.getTicks();
+        drawnGames = snapshot.getGames();
+    }
+    
+    /**
+     * Moves the view to centre the head if the head is near an edge of it.
+     * The view never goes past the edges of the grid.
+     * @param head the packed position of the head
+     * @param recentre true to centre the head wherever it is, for example
+     * when a new game has started
+     * @return true if the view moved
+     */
+    private boolean followHead(long head, boolean recentre) {
+        if (viewWidth == gridWidth && viewHeight == gridHeight) {
+            return false;
+        }
+        int x = Coordinates.x(head) - viewX;
+        int y = Coordinates.y(head) - viewY;
+        int marginX = viewWidth / 4;
+        int marginY = viewHeight / 4;
+        if (!recentre && x >= marginX && x < viewWidth - marginX && y >= marginY && y < viewHeight - marginY) {
+            return false;
+        }
+        int newX = Math.max(0, Math.min(gridWidth - viewWidth, Coordinates.x(head) - viewWidth / 2));
+        int newY = Math.max(0, Math.min(gridHeight - viewHeight, Coordinates.y(head) - viewHeight / 2));
+        boolean moved = newX != viewX || newY != viewY;
+        viewX = newX;
+        viewY = newY;
+        return moved;
+    }
+    
+    /**
+     * Checks whether a cell is inside the view
+     * @param pos the packed position of the cell
+     * @return true if the cell is shown
+     */
+    private boolean inView(long pos) {
+        int x = Coordinates.x(pos) - viewX;
+        int y = Coordinates.y(pos) - viewY;
+        return x >= 0 && x < viewWidth && y >= 0 && y < viewHeight;
+    }
+    
+    /**
+     * Converts a position on the grid into a position in the view
+     * @param pos the packed position on the grid
+     * @return the packed position relative to the top left of the view
+     */
+    private long toView(long pos) {
+        return Coordinates.pack(Coordinates.x(pos) - viewX, Coordinates.y(pos) - viewY);
+    }
+    
+    /**
+     * Gets the x coordinate of the cell of the grid at the left of the view
+     * @return the column shown at the left of the view
+     */
+    public int getViewX() {
+        return viewX;
+    }
+    
+    /**
+     * Gets the y coordinate of the cell of the grid at the top of the view
+     * @return the row shown at the top of the view
+     */
+    public int getViewY() {
+        return viewY;
+    }
+    
+    /**
+     * Forces the next draw to repaint the whole game grid, for example after
+     * the canvas has been resized or cleared
+     */
+    public void invalidate() {
+        fullRedraw = true;
+    }
+    
+    /**
+     * Fills part of a snake, merging each straight run of parts into a single
+     * line
+     * @param color the Color to fill with
+     * @param parts the packed positions of the parts of the snake
+     * @param from the index of the first part to fill
+     * @param to the index of the last part to fill
+     */
+    private void fillRuns(Color color, long[] parts, int from, int to) {
+        int i = from;
+        while (i <= to) {
+            //Extend the run for as long as each part is one step further in
+            //the same direction as the first step
+            int j = i;
+            if (j < to) {
+                int dx = Coordinates.x(parts[j + 1]) - Coordinates.x(parts[j]);
+                int dy = Coordinates.y(parts[j + 1]) - Coordinates.y(parts[j]);
+                if (Math.abs(dx) + Math.abs(dy) == 1) {
+                    while (j < to && Coordinates.x(parts[j + 1]) - Coordinates.x(parts[j]) == dx
+                            && Coordinates.y(parts[j + 1]) - Coordinates.y(parts[j]) == dy) {
+                        j++;
+                    }
+                }
+            }
+            fillLine(color, parts[i], parts[j]);
+            i = j + 1;
+        }
+    }
+    
+    /**
+     * Fills a single cell
+     * @param color the Color to fill with
+     * @param pos the packed position of the cell to fill
+     */
+    private void fillCell(Color color, long pos) {
+        fillLine(color, pos, pos);
+    }
+    
+    /**
+     * Fills a straight line of cells. The part of the line outside the view
+     * is left out, so lines that are not shown cost nothing to draw.
+     * @param color the Color to fill with
+     * @param start the packed position of the cell at one end of the line
+     * @param end the packed position of the cell at the other end
+     */
+    private void fillLine(Color color, long start, long end) {
+        int minX = Math.max(0, Math.min(Coordinates.x(start), Coordinates.x(end)) - viewX);
+        int maxX = Math.min(viewWidth - 1, Math.max(Coordinates.x(start), Coordinates.x(end)) - viewX);
+        int minY = Math.max(0, Math.min(Coordinates.y(start), Coordinates.y(end)) - viewY);
+        int maxY = Math.min(viewHeight - 1, Math.max(Coordinates.y(start), Coordinates.y(end)) - viewY);
+        if (minX <= maxX && minY <= maxY) {
+            fillCells(color, minX, minY, maxX, maxY);
+        }
+    }
+    
+    /**
+     * Fills the whole view with one colour
+     * @param color the Color to fill with
+     */
+    protected abstract void fillBackground(Color color);
+    
+    /**
+     * Fills a rectangle of cells, all of which are inside the view. The
+     * coordinates are relative to the top left of the view.
+     * @param color the Color to fill with
+     * @param minX the x coordinate of the leftmost cells
+     * @param minY the y coordinate of the topmost cells
+     * @param maxX the x coordinate of the rightmost cells
+     * @param maxY the y coordinate of the bottommost cells
+     */
+    protected abstract void fillCells(Color color, int minX, int minY, int maxX, int maxY);
+    
+    /**
+     * Draws the head part of the way between the cell it has just left and
+     * the cell it is now in. Both cells have already been filled with the
+     * snake. By default the head is left in the cell it is now in. This is
+     * only called when both cells are inside the view.
+     * @param from the packed position in the view the head has left
+     * @param to the packed position in the view the head is now in
+     * @param alpha how far the head has moved, from 0 to 1
+     */
+    protected void drawMovingHead(long from, long to, double alpha) {
+    }
+    
+    /**
+     * Called once everything for a frame has been drawn
+     */
+    protected void finishFrame() {
+    }
+}
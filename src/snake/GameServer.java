@@ -0,0 +1,513 @@
+package snake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Hosts an Arena for many players over TCP. Each connection steers its own
+ * snake, and when it closes the snake goes back to a bot. Everything happens
+ * on one thread around a Selector: accepting connections, reading turns,
+ * ticking the arena on a fixed timestep and writing to clients that are
+ * ready, so no connection ever blocks another.
+ *
+ * Every message starts with its length as an int, not counting the length
+ * itself, and its type as a byte. A new connection is sent a WELCOME message
+ * with the number of its snake and the width and height of the grid as ints,
+ * then a FULL message with every cell that is not empty. After every tick all
+ * connections are sent the same DELTA message with only the cells that changed,
+ * which are the new heads, the tails that moved away and the apples eaten and
+ * placed. FULL and DELTA messages hold the tick as a long, then a varint
+ * count of cells, then for each cell in increasing order a varint of how far
+ * it is past the previous cell and a varint of its contents: 0 for empty, 1
+ * for an apple or twice one more than the number of the snake in it.
+ *
+ * Clients send turns as single bytes holding the ordinal of the Direction.
+ * @author Ashley Allen
+ */
+public class GameServer implements Runnable, Closeable {
+    public static final byte WELCOME = 1;
+    public static final byte FULL = 2;
+    public static final byte DELTA = 3;
+    
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    //A connection that falls this many messages behind is closed rather than
+    //letting its messages pile up
+    private static final int MAX_QUEUED_MESSAGES = 64;
+    
+    //Most deltas fit in one pooled buffer, and the pool has room for every
+    //connection to have a few messages queued
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    
+    private final Arena arena;
+    private final FixedTimestep timestep;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final BufferPool pool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    
+    //The connection steering each snake, or null for the snakes steered by bots
+    private final Connection[] connections;
+    private int connectionCount = 0;
+    
+    //The cells going into the message being written, sorted before writing
+    private int[] cells = new int[64];
+    
+    private volatile boolean running = true;
+    
+    //Totals for reporting, written by the server thread only
+    private volatile long bytesSent = 0;
+    private volatile long deltasSent = 0;
+    private volatile long deltaBytes = 0;
+    
+    /**
+     * Creates a new GameServer listening on the specified address. Nothing
+     * happens until it is run.
+     * @param arena the arena to host
+     * @param ticksPerSecond the number of ticks to run each second
+     * @param address the address to listen on, with port 0 for any free port
+     * @throws IOException if the address cannot be listened on
+     */
+    public GameServer(Arena arena, double ticksPerSecond, InetSocketAddress address) throws IOException {
+        this.arena = arena;
+        this.timestep = new FixedTimestep(ticksPerSecond, 5);
+        this.connections = new Connection[arena.getSnakeCount()];
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(address, 1024);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    
+    /**
+     * Serves connections and ticks the arena until the server is closed
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                //Sleep until the next tick is due unless a connection needs
+                //attention first
+                long wait = timestep.getNanosUntilNextTick();
+                if (wait >= 1_000_000) {
+                    selector.select(wait / 1_000_000);
+                } else {
+                    selector.selectNow();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        while (accept()) {
+                            //Take every connection that is waiting
+                        }
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(connection);
+                        }
+                    }
+                }
+                
+                int ticks = timestep.advance(System.nanoTime());
+                for (int i = 0; i < ticks; i++) {
+                    arena.tick();
+                    broadcast(encodeDelta());
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Server stopped: " + ex.getMessage());
+        } finally {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    disconnect(connection);
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ex) {
+                System.err.println("Could not close server: " + ex.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Accepts a waiting connection and gives it the first snake steered by a
+     * bot, or closes it if every snake already has a player
+     * @return true if there was a connection waiting
+     * @throws IOException if the connection cannot be accepted
+     */
+    private boolean accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return false;
+        }
+        int snake = 0;
+        while (snake < connections.length && connections[snake] != null) {
+            snake++;
+        }
+        if (snake == connections.length) {
+            channel.close();
+            return true;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel, snake);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections[snake] = connection;
+        connectionCount++;
+        arena.setControlled(snake, true);
+        
+        Message welcome = new Message(pool.acquire(17));
+        welcome.data.putInt(13).put(WELCOME).putInt(snake).putInt(arena.getGridWidth()).putInt(arena.getGridHeight()).flip();
+        send(connection, welcome);
+        release(welcome);
+        //Writing the welcome may have found the connection already closed
+        if (connections[snake] == connection) {
+            Message full = encodeFull();
+            send(connection, full);
+            release(full);
+        }
+        return true;
+    }
+    
+    /**
+     * Reads the turns a connection has sent and queues them for its snake
+     * @param connection the connection to read from
+     */
+    private void read(Connection connection) {
+        ByteBuffer input = connection.input;
+        input.clear();
+        try {
+            if (connection.channel.read(input) < 0) {
+                disconnect(connection);
+                return;
+            }
+        } catch (IOException ex) {
+            disconnect(connection);
+            return;
+        }
+        input.flip();
+        while (input.hasRemaining()) {
+            int b = input.get();
+            if (b < 0 || b >= DIRECTIONS.length) {
+                disconnect(connection);
+                return;
+            }
+            arena.queueTurn(connection.snake, DIRECTIONS[b]);
+        }
+    }
+    
+    /**
+     * Sends a message to every connection. The message is written once and
+     * shared, and goes back to the pool once every connection has sent it.
+     * @param message the message to send
+     */
+    private void broadcast(Message message) {
+        deltasSent++;
+        deltaBytes += message.data.remaining();
+        for (Connection connection : connections) {
+            if (connection != null) {
+                send(connection, message);
+            }
+        }
+        release(message);
+    }
+    
+    /**
+     * Queues a message for a connection and writes as much of it as the
+     * connection will take straight away. Nothing is queued for a connection
+     * that has been closed, since nothing would release it.
+     * @param connection the connection to send to
+     * @param message the message to send
+     */
+    private void send(Connection connection, Message message) {
+        if (connections[connection.snake] != connection) {
+            return;
+        }
+        if (connection.queue.size() >= MAX_QUEUED_MESSAGES) {
+            disconnect(connection);
+            return;
+        }
+        message.references++;
+        connection.queue.add(message);
+        //Anything queued before is waiting for the connection to be ready
+        if (connection.queue.size() == 1) {
+            flush(connection);
+        }
+    }
+    
+    /**
+     * Writes queued messages to a connection until they have all been sent or
+     * the connection will take no more, in which case the rest are written
+     * once the selector says it is ready
+     * @param connection the connection to write to
+     */
+    private void flush(Connection connection) {
+        try {
+            while (!connection.queue.isEmpty()) {
+                Message message = connection.queue.peek();
+                if (connection.output == null) {
+                    connection.output = message.data.duplicate();
+                }
+                bytesSent += connection.channel.write(connection.output);
+                if (connection.output.hasRemaining()) {
+                    setWaiting(connection, true);
+                    return;
+                }
+                connection.queue.poll();
+                connection.output = null;
+                release(message);
+            }
+            setWaiting(connection, false);
+        } catch (IOException ex) {
+            disconnect(connection);
+        }
+    }
+    
+    /**
+     * Asks the selector to say when a connection can take more data, or stops
+     * asking once everything queued has been sent
+     * @param connection the connection
+     * @param waiting true if there is more to send
+     */
+    private void setWaiting(Connection connection, boolean waiting) {
+        if (connection.waiting != waiting) {
+            connection.waiting = waiting;
+            connection.key.interestOps(waiting ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+    
+    /**
+     * Closes a connection and hands its snake back to a bot
+     * @param connection the connection to close
+     */
+    private void disconnect(Connection connection) {
+        if (connections[connection.snake] != connection) {
+            return;
+        }
+        connections[connection.snake] = null;
+        connectionCount--;
+        arena.setControlled(connection.snake, false);
+        for (Message message : connection.queue) {
+            release(message);
+        }
+        connection.queue.clear();
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            //Nothing more can be done with the connection
+        }
+    }
+    
+    /**
+     * Gives up one reference to a message, returning its buffer to the pool
+     * once nothing refers to it
+     * @param message the message
+     */
+    private void release(Message message) {
+        if (--message.references == 0) {
+            pool.release(message.data);
+        }
+    }
+    
+    /**
+     * Writes the cells changed by the last tick
+     * @return the DELTA message
+     */
+    private Message encodeDelta() {
+        int count = arena.getChangeCount();
+        ensureCells(count);
+        for (int i = 0; i < count; i++) {
+            cells[i] = arena.getChangedCell(i);
+        }
+        return encodeCells(DELTA, count);
+    }
+    
+    /**
+     * Writes every cell with a snake or an apple in it
+     * @return the FULL message
+     */
+    private Message encodeFull() {
+        int count = 0;
+        for (int id = 0; id < arena.getSnakeCount(); id++) {
+            if (arena.isAlive(id)) {
+                Snake snake = arena.getSnake(id);
+                ensureCells(count + snake.getLength());
+                for (int i = 0; i < snake.getLength(); i++) {
+                    cells[count++] = snake.getBodyY(i) * arena.getGridWidth() + snake.getBodyX(i);
+                }
+            }
+        }
+        ensureCells(count + arena.getAppleCount());
+        for (int i = 0; i < arena.getAppleCount(); i++) {
+            cells[count++] = arena.getAppleCell(i);
+        }
+        return encodeCells(FULL, count);
+    }
+    
+    /**
+     * Writes a message holding the current contents of some cells. The cells
+     * are sorted and any repeats left out so that each can be written as the
+     * usually small distance from the one before.
+     * @param type the type of message
+     * @param count the number of cells to write from the start of cells
+     * @return the message
+     */
+    private Message encodeCells(byte type, int count) {
+        Arrays.sort(cells, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || cells[i] != cells[unique - 1]) {
+                cells[unique++] = cells[i];
+            }
+        }
+        
+        //Each varint takes at most five bytes
+        Message message = new Message(pool.acquire(4 + 1 + 8 + 5 + unique * 10));
+        ByteBuffer data = message.data;
+        data.putInt(0).put(type).putLong(arena.getTicks());
+        putVarint(data, unique);
+        int previous = 0;
+        for (int i = 0; i < unique; i++) {
+            int cell = cells[i];
+            putVarint(data, cell - previous);
+            previous = cell;
+            int x = cell % arena.getGridWidth();
+            int y = cell / arena.getGridWidth();
+            int owner = arena.getOwner(x, y);
+            putVarint(data, owner >= 0 ? (owner + 1) << 1 : arena.isApple(x, y) ? 1 : 0);
+        }
+        data.putInt(0, data.position() - 4);
+        data.flip();
+        return message;
+    }
+    
+    /**
+     * Makes sure the cell buffer can hold the specified number of cells
+     * @param capacity the number of cells needed
+     */
+    private void ensureCells(int capacity) {
+        if (cells.length < capacity) {
+            cells = Arrays.copyOf(cells, Integer.highestOneBit(capacity) << 1);
+        }
+    }
+    
+    /**
+     * Writes an int seven bits at a time, least significant first, with the
+     * top bit of each byte set if more follow
+     * @param data the buffer to write to
+     * @param value the value to write, which must not be negative
+     */
+    private static void putVarint(ByteBuffer data, int value) {
+        while ((value & ~0x7F) != 0) {
+            data.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        data.put((byte) value);
+    }
+    
+    /**
+     * Stops the server, closing every connection. The server thread finishes
+     * shortly afterwards.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+    
+    /**
+     * Gets the port the server is listening on
+     * @return the local port
+     * @throws IOException if the server has been closed
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+    
+    /**
+     * Gets the number of players connected
+     * @return the number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+    
+    /**
+     * Gets the number of bytes written to every connection so far
+     * @return the number of bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+    
+    /**
+     * Gets the number of ticks broadcast so far
+     * @return the number of DELTA messages sent
+     */
+    public long getDeltasSent() {
+        return deltasSent;
+    }
+    
+    /**
+     * Gets the total size of every DELTA message broadcast, counting each
+     * message once however many connections it went to
+     * @return the number of bytes in DELTA messages
+     */
+    public long getDeltaBytes() {
+        return deltaBytes;
+    }
+    
+    /**
+     * A message written once and shared by every connection sending it
+     */
+    private static class Message {
+        final ByteBuffer data;
+        //Held by whoever wrote it until they release it, plus one for each
+        //connection that has yet to finish sending it
+        int references = 1;
+        
+        Message(ByteBuffer data) {
+            this.data = data;
+        }
+    }
+    
+    /**
+     * A player's connection and the messages waiting to be sent to it
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final int snake;
+        final ByteBuffer input = ByteBuffer.allocate(64);
+        final ArrayDeque<Message> queue = new ArrayDeque<>();
+        SelectionKey key;
+        //The part of the message at the front of the queue still to be sent,
+        //or null if it has not been started
+        ByteBuffer output;
+        //Whether the selector is watching for the connection being writable
+        boolean waiting;
+        
+        Connection(SocketChannel channel, int snake) {
+            this.channel = channel;
+            this.snake = snake;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package snake;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a Game on its own thread at a fixed tick rate. Input from other threads
+ * is queued and applied at the start of each tick, and after ticking a
+ * snapshot of the game is published so that it can be drawn without holding
+ * up the simulation.
+ * @author Ashley Allen
+ */
+public class GameSimulation implements Runnable {
+    //The most ticks to run at once when catching up after falling behind
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    
+    private final Game game;
+    private final SnapshotBuffer<GameSnapshot> snapshots = new SnapshotBuffer<>(new GameSnapshot(), new GameSnapshot());
+    private final GameMetrics metrics = new GameMetrics();
+    private final FixedTimestep timestep;
+    
+    //Flags that are set by input and read when ticking
+    private volatile boolean paused = false;
+    private volatile boolean auto = false;
+    private volatile AutopilotStrategy strategy = AutopilotStrategy.PATH;
+    private volatile double ticksPerSecond;
+    
+    //Turns waiting to be made, queued by input and taken by ticks
+    private final DirectionQueue input = new DirectionQueue(16);
+    
+    //The autopilot is only touched when ticking and is created on the first
+    //automatic tick and again whenever the selected strategy changes, since
+    //on a large grid its search buffers take up a lot of memory
+    private AutopilotStrategy autopilotStrategy;
+    private Autopilot autopilot;
+    
+    //Saves the game every so often from the simulation thread, or null
+    private Checkpointer checkpointer;
+    
+    //Where each finished game is added, or null, along with the seed of the
+    //current game, the tick the current game started on and the last strategy that
+    //steered the snake in it, or null if it has only been steered by hand
+    private Leaderboard leaderboard;
+    private long gameSeed;
+    private long gameStartTicks = 0;
+    private AutopilotStrategy gameStrategy;
+    
+    private volatile long ticks = 0;
+    private volatile long games = 1;
+    private boolean moved = false;
+    private long tickNanoTime = System.nanoTime();
+    
+    private volatile boolean running = false;
+    private Thread thread;
+    
+    /**
+     * Creates a new GameSimulation
+     * @param game the game to run
+     * @param ticksPerSecond the number of ticks to run each second
+     */
+    public GameSimulation(Game game, double ticksPerSecond) {
+        this.game = game;
+        this.ticksPerSecond = ticksPerSecond;
+        this.timestep = new FixedTimestep(ticksPerSecond, MAX_CATCH_UP_TICKS);
+        publishSnapshot();
+    }
+    
+    /**
+     * Starts running the game on a new daemon thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Snake simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stops the simulation thread and waits for it to finish
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+    
+    /**
+     * Runs ticks as they fall due until stopped, sleeping in between
+     */
+    @Override
+    public void run() {
+        while (running) {
+            if (timestep.getTicksPerSecond() != ticksPerSecond) {
+                timestep.setTicksPerSecond(ticksPerSecond);
+            }
+            int due = timestep.advance(System.nanoTime());
+            for (int i = 0; i < due; i++) {
+                tick();
+            }
+            //Publish once for a burst of catch up ticks rather than copying
+            //the snake for every one of them
+            if (due > 0) {
+                publishSnapshot();
+            }
+            flushLeaderboard();
+            LockSupport.parkNanos(timestep.getNanosUntilNextTick());
+        }
+    }
+    
+    /**
+     * Calculates the next state of the game unless it is paused, first
+     * applying a queued turn or asking the autopilot where to go
+     */
+    public void tick() {
+        if (paused) {
+            return;
+        }
+        long start = System.nanoTime();
+        if (auto) {
+            if (autopilot == null || autopilotStrategy != strategy) {
+                autopilotStrategy = strategy;
+                autopilot = autopilotStrategy.create(game.getGridWidth(), game.getGridHeight());
+            }
+            input.clear();
+            gameStrategy = autopilotStrategy;
+            long replans = autopilot.getReplans();
+            game.changeDirection(autopilot.nextDirection(game));
+            metrics.record(Phase.AUTOPILOT, System.nanoTime() - start);
+            metrics.countReplans(autopilot.getReplans() - replans);
+        } else {
+            applyQueuedTurn();
+        }
+        //The game starts again as soon as the snake dies, so the score has
+        //to be read before stepping
+        int score = game.getScore();
+        int length = game.getSnake().getLength();
+        boolean growing = game.getSnake().isGrowing();
+        StepResult result = game.step();
+        metrics.record(Phase.TICK, System.nanoTime() - start);
+        metrics.countTick(result);
+        moved = result != StepResult.DIED && result != StepResult.WON;
+        ticks++;
+        if (!moved) {
+            games++;
+            if (result == StepResult.WON) {
+                //The winning move grew the snake if it was still growing and
+                //the apple it ate grows it once more
+                score++;
+                length += growing ? 2 : 1;
+            }
+            addToLeaderboard(score, length);
+        }
+        tickNanoTime = System.nanoTime();
+        if (checkpointer != null) {
+            checkpointer.update(tickNanoTime);
+        }
+    }
+    
+    /**
+     * Adds the game that has just finished to the leaderboard if there is one.
+     * If the leaderboard cannot be written to it is not used again, rather
+     * than stopping the game.
+     * @param score the final score
+     * @param length the length of the snake at the end
+     */
+    private void addToLeaderboard(int score, int length) {
+        if (leaderboard != null) {
+            try {
+                leaderboard.add(score, length, ticks - gameStartTicks, gameSeed, gameStrategy);
+            } catch (IOException ex) {
+                System.err.println("Could not add to the leaderboard: " + ex.getMessage());
+                leaderboard = null;
+            }
+        }
+        gameStartTicks = ticks;
+        gameStrategy = null;
+        gameSeed = game.getGameSeed();
+    }
+    
+    /**
+     * Writes finished games to the leaderboard file once they have waited
+     * long enough, since games can end minutes apart. If the leaderboard
+     * cannot be written to it is not used again.
+     */
+    private void flushLeaderboard() {
+        if (leaderboard != null) {
+            try {
+                leaderboard.flushIfDue();
+            } catch (IOException ex) {
+                System.err.println("Could not write the leaderboard: " + ex.getMessage());
+                leaderboard = null;
+            }
+        }
+    }
+    
+    /**
+     * Makes the first queued turn that would change the snake's direction.
+     * Turns that would have no effect are thrown away and any after the one
+     * that is made are kept for later ticks.
+     */
+    private void applyQueuedTurn() {
+        Direction dir;
+        while ((dir = input.poll()) != null) {
+            if (game.getSnake().canTurn(dir)) {
+                game.changeDirection(dir);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Copies the current state into the back snapshot buffer and publishes it,
+     * unless the reader is still drawing from that buffer
+     */
+    public void publishSnapshot() {
+        GameSnapshot snapshot = snapshots.beginWrite();
+        if (snapshot != null) {
+            snapshot.capture(game, this, moved, tickNanoTime, (long) (1_000_000_000 / ticksPerSecond));
+            snapshots.publish();
+        }
+    }
+    
+    /**
+     * Saves the game every so often between ticks. Must be set before the
+     * simulation is started.
+     * @param checkpointer the checkpointer of the game being run, or null to
+     * stop saving
+     */
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+    
+    /**
+     * Adds every game to a leaderboard as it finishes. Must be set before the
+     * simulation is started.
+     * @param leaderboard the leaderboard, or null to not keep one
+     */
+    public void setLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+        this.gameSeed = game.getGameSeed();
+    }
+    
+    /**
+     * Gets the counters and timings of the simulation. The game's own steps
+     * are only timed if it has been given these metrics too.
+     * @return the metrics
+     */
+    public GameMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Gets the buffer that snapshots are published to
+     * @return the snapshot buffer
+     */
+    public SnapshotBuffer<GameSnapshot> getSnapshots() {
+        return snapshots;
+    }
+    
+    /**
+     * Queues a turn to be made on a later tick. Must only be called from a
+     * single input thread.
+     * @param dir the direction to turn in
+     */
+    public void queueTurn(Direction dir) {
+        if (!paused) {
+            input.offer(dir);
+        }
+    }
+    
+    /**
+     * Pauses or resumes the game
+     */
+    public void togglePaused() {
+        paused = !paused;
+        publishIfStopped();
+    }
+    
+    /**
+     * Turns automatic mode on or off
+     */
+    public void toggleAuto() {
+        auto = !auto;
+        publishIfStopped();
+    }
+    
+    /**
+     * Switches the autopilot to the next strategy
+     */
+    public void nextStrategy() {
+        AutopilotStrategy[] strategies = AutopilotStrategy.values();
+        strategy = strategies[(strategy.ordinal() + 1) % strategies.length];
+        publishIfStopped();
+    }
+    
+    /**
+     * Changes the strategy used by the autopilot in automatic mode
+     * @param strategy the new strategy
+     */
+    public void setStrategy(AutopilotStrategy strategy) {
+        this.strategy = strategy;
+        publishIfStopped();
+    }
+    
+    /**
+     * Publishes a snapshot straight away if there is no simulation thread to
+     * do so, so that changes to the flags still show up
+     */
+    private void publishIfStopped() {
+        if (!running) {
+            publishSnapshot();
+        }
+    }
+    
+    /**
+     * Changes how many ticks are run each second
+     * @param ticksPerSecond the new tick rate
+     */
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+    
+    /**
+     * Gets how many ticks are run each second
+     * @return the tick rate
+     */
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+    
+    /**
+     * Returns whether the game is paused or not
+     * @return paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Returns whether the game is set to automatic mode
+     * @return auto
+     */
+    public boolean isAuto() {
+        return auto;
+    }
+    
+    /**
+     * Returns the strategy used by the autopilot in automatic mode
+     * @return strategy
+     */
+    public AutopilotStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * Gets the number of ticks that have been run
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    /**
+     * Gets the number of games that have been started
+     * @return the number of games
+     */
+    public long getGames() {
+        return games;
+    }
+    
+    /**
+     * Gets the game being run
+     * @return the game
+     */
+    public Game getGame() {
+        return game;
+    }
+}
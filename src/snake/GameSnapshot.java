@@ -0,0 +1,149 @@
+package snake;
+
+/**
+ * A copy of everything needed to draw a game at the end of a tick. Snapshots
+ * are filled in by the simulation thread and then only read once published,
+ * so they can be drawn on another thread without locking the game.
+ * @author Ashley Allen
+ */
+public class GameSnapshot {
+    private long[] body = new long[16];
+    private int length;
+    private Coordinates apple;
+    private int score;
+    private boolean paused;
+    private boolean auto;
+    private AutopilotStrategy strategy;
+    private boolean moved;
+    private long ticks;
+    private long games;
+    private long tickNanoTime;
+    private long tickNanos;
+    
+    /**
+     * Copies the state of a game into this snapshot
+     * @param game the game to copy
+     * @param simulation the simulation running the game
+     * @param moved true if the snake moved normally on the last tick rather
+     * than a new game starting
+     * @param tickNanoTime the time of the last tick in nanoseconds
+     * @param tickNanos the time between ticks in nanoseconds
+     */
+    void capture(Game game, GameSimulation simulation, boolean moved, long tickNanoTime, long tickNanos) {
+        Snake snake = game.getSnake();
+        length = snake.getLength();
+        if (body.length < length) {
+            body = new long[Integer.highestOneBit(length) << 1];
+        }
+        snake.copyBody(body);
+        apple = game.getApple();
+        score = game.getScore();
+        paused = simulation.isPaused();
+        auto = simulation.isAuto();
+        strategy = simulation.getStrategy();
+        ticks = simulation.getTicks();
+        games = simulation.getGames();
+        this.moved = moved;
+        this.tickNanoTime = tickNanoTime;
+        this.tickNanos = tickNanos;
+    }
+    
+    /**
+     * Gets the length of the snake
+     * @return the length of the snake
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /**
+     * Gets the packed position of a snake's body part
+     * @param index the index of the body part, 0 being the head
+     * @return the packed position of the body part
+     */
+    public long getBodyPacked(int index) {
+        return body[index];
+    }
+    
+    /**
+     * Gets the position of the apple
+     * @return the position of the apple
+     */
+    public Coordinates getApple() {
+        return apple;
+    }
+    
+    /**
+     * Gets the score of the current game
+     * @return the score
+     */
+    public int getScore() {
+        return score;
+    }
+    
+    /**
+     * Returns whether the game is paused or not
+     * @return paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+    
+    /**
+     * Returns whether the game is set to automatic mode
+     * @return auto
+     */
+    public boolean isAuto() {
+        return auto;
+    }
+    
+    /**
+     * Returns the strategy used by the autopilot in automatic mode
+     * @return strategy
+     */
+    public AutopilotStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * Returns whether the head moved from the second body part to the first
+     * on the last tick, so it can be drawn sliding between them
+     * @return true if the snake moved normally on the last tick
+     */
+    public boolean hasMoved() {
+        return moved;
+    }
+    
+    /**
+     * Gets the number of ticks the simulation has run
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    /**
+     * Gets the number of games that have been started, which changes
+     * whenever the snake dies or fills the grid
+     * @return the number of games
+     */
+    public long getGames() {
+        return games;
+    }
+    
+    /**
+     * Gets the time of the last tick
+     * @return the value of System.nanoTime() when the last tick ran
+     */
+    public long getTickNanoTime() {
+        return tickNanoTime;
+    }
+    
+    /**
+     * Gets the time between ticks
+     * @return the time between ticks in nanoseconds
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+}
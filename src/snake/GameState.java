@@ -0,0 +1,305 @@
+package snake;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Everything needed to carry on a game exactly where it was left: the snake,
+ * the apple, the score and the state of the random number generator, along
+ * with the settings the game was created with. States are filled in by
+ * GameEngine.saveState and can be written to a save file and read back.
+ *
+ * The file has a fixed layout so that it can be mapped into memory and the
+ * body copied in and out in one go however long the snake is. A header of
+ * HEADER_SIZE bytes is followed by the packed position of every body part,
+ * head first, and then, on grids small enough to keep them, every cell of the
+ * grid in the order the game keeps its free cells so that apples carry on
+ * appearing in the same places. The header holds a CRC of everything else so
+ * that a file that was only partly written is rejected.
+ *
+ * A Checkpointer keeps a game in two save files, the one it is given and one
+ * with .1 added to its name, and writes each save over the older of the two.
+ * A crash part way through a save can then only spoil the file being written
+ * and the save before it is still there in the other. Each save is numbered
+ * in the header and loadLatest carries on from the newest that is valid.
+ * @author Ashley Allen
+ */
+public class GameState {
+    static final int MAGIC = 0x534E4B53;
+    static final byte VERSION = 2;
+    static final int HEADER_SIZE = 88;
+    //The CRC is kept here in the header and left out of the CRC itself
+    static final int CRC_OFFSET = 72;
+    
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    //Filled in and read back by GameEngine
+    int gridWidth, gridHeight;
+    long seed;
+    long gameSeed;
+    int startX, startY, startLength;
+    Direction startDirection;
+    long randomState;
+    int score;
+    long applesSpawned;
+    long apple;
+    Direction direction;
+    boolean growing;
+    int length;
+    long[] body = new long[16];
+    //Every cell in the order the free cells are kept with the number that are
+    //free, or null if the grid is too large to keep them
+    int[] freeCells;
+    int freeCellCount;
+    //Counts up with each save so the newer of the two save files can be told
+    //apart, and picks which of them the save is written to
+    int saveNumber;
+    
+    /**
+     * Makes sure the body array can hold a snake of the specified length
+     * @param length the length of the snake
+     */
+    void ensureBodyCapacity(int length) {
+        if (body.length < length) {
+            body = new long[Integer.highestOneBit(length) << 1];
+        }
+    }
+    
+    /**
+     * Creates a new game that carries on from this state
+     * @return the new game
+     * @throws IllegalArgumentException if the state is not a valid game
+     */
+    public GameEngine createEngine() {
+        GameEngine engine = new GameEngine(gridWidth, gridHeight, seed, startX, startY, startLength, startDirection);
+        engine.restoreState(this);
+        return engine;
+    }
+    
+    /**
+     * Gets the number of bytes the state takes up in a save file
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return HEADER_SIZE + 8L * length + (freeCells != null ? 4L * freeCells.length : 0);
+    }
+    
+    /**
+     * Writes the state to a buffer in the layout of a save file
+     * @param buffer the buffer to write to, starting at index 0, with room for
+     * at least getSize() bytes
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(0, MAGIC);
+        buffer.put(4, VERSION);
+        buffer.put(5, (byte) startDirection.ordinal());
+        buffer.put(6, (byte) direction.ordinal());
+        buffer.put(7, (byte) (growing ? 1 : 0));
+        buffer.putInt(8, gridWidth);
+        buffer.putInt(12, gridHeight);
+        buffer.putInt(16, startX);
+        buffer.putInt(20, startY);
+        buffer.putInt(24, startLength);
+        buffer.putInt(28, length);
+        buffer.putLong(32, seed);
+        buffer.putLong(40, randomState);
+        buffer.putLong(48, applesSpawned);
+        buffer.putLong(56, apple);
+        buffer.putInt(64, score);
+        buffer.putInt(68, freeCells != null ? freeCellCount : -1);
+        buffer.putInt(76, saveNumber);
+        buffer.putLong(80, gameSeed);
+        
+        //Views of the buffer copy whole arrays at once rather than one number
+        //at a time
+        ByteBuffer section = buffer.duplicate();
+        section.position(HEADER_SIZE);
+        section.asLongBuffer().put(body, 0, length);
+        if (freeCells != null) {
+            section.position(HEADER_SIZE + 8 * length);
+            section.asIntBuffer().put(freeCells);
+        }
+        buffer.putInt(CRC_OFFSET, crc(buffer, (int) getSize()));
+    }
+    
+    /**
+     * Reads a state from a buffer in the layout of a save file
+     * @param buffer the buffer to read from, starting at index 0
+     * @return the state
+     * @throws IOException if the buffer does not hold a whole, valid state
+     */
+    public static GameState readFrom(ByteBuffer buffer) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IOException("Unsupported save version: " + buffer.get(4));
+        }
+        GameState state = new GameState();
+        state.startDirection = readDirection(buffer, 5);
+        state.direction = readDirection(buffer, 6);
+        state.growing = buffer.get(7) != 0;
+        state.gridWidth = buffer.getInt(8);
+        state.gridHeight = buffer.getInt(12);
+        state.startX = buffer.getInt(16);
+        state.startY = buffer.getInt(20);
+        state.startLength = buffer.getInt(24);
+        state.length = buffer.getInt(28);
+        state.seed = buffer.getLong(32);
+        state.randomState = buffer.getLong(40);
+        state.applesSpawned = buffer.getLong(48);
+        state.apple = buffer.getLong(56);
+        state.score = buffer.getInt(64);
+        state.freeCellCount = buffer.getInt(68);
+        state.saveNumber = buffer.getInt(76);
+        state.gameSeed = buffer.getLong(80);
+        
+        //Check the sizes against the buffer before making arrays of them
+        long cells = (long) state.gridWidth * state.gridHeight;
+        if (state.gridWidth < 1 || state.gridHeight < 1 || state.length < 1 || state.length > cells) {
+            throw new IOException("Invalid save file header");
+        }
+        long size = HEADER_SIZE + 8L * state.length + (state.freeCellCount >= 0 ? 4L * cells : 0);
+        if (size > buffer.limit()) {
+            throw new IOException("Save file is cut off: " + buffer.limit() + " of " + size + " bytes");
+        }
+        if (buffer.getInt(CRC_OFFSET) != crc(buffer, (int) size)) {
+            throw new IOException("Save file is corrupt");
+        }
+        
+        state.body = new long[Math.max(16, state.length)];
+        if (state.freeCellCount >= 0) {
+            state.freeCells = new int[(int) cells];
+        }
+        ByteBuffer section = buffer.duplicate();
+        section.position(HEADER_SIZE);
+        section.asLongBuffer().get(state.body, 0, state.length);
+        if (state.freeCells != null) {
+            section.position(HEADER_SIZE + 8 * state.length);
+            section.asIntBuffer().get(state.freeCells);
+        }
+        return state;
+    }
+    
+    /**
+     * Reads a direction stored as its ordinal
+     * @param buffer the buffer to read from
+     * @param index the index of the byte holding the direction
+     * @return the direction
+     * @throws IOException if the byte is not a direction
+     */
+    private static Direction readDirection(ByteBuffer buffer, int index) throws IOException {
+        int ordinal = buffer.get(index);
+        if (ordinal < 0 || ordinal >= DIRECTIONS.length) {
+            throw new IOException("Invalid direction in save file: " + ordinal);
+        }
+        return DIRECTIONS[ordinal];
+    }
+    
+    /**
+     * Calculates the CRC of a state in a buffer, leaving out the CRC itself
+     * @param buffer the buffer holding the state from index 0
+     * @param size the size of the state in bytes
+     * @return the CRC
+     */
+    private static int crc(ByteBuffer buffer, int size) {
+        CRC32 crc = new CRC32();
+        ByteBuffer section = buffer.duplicate();
+        section.position(0).limit(CRC_OFFSET);
+        crc.update(section);
+        section.limit(size).position(CRC_OFFSET + 4);
+        crc.update(section);
+        return (int) crc.getValue();
+    }
+    
+    /**
+     * Writes the state to a save file through a mapping of the file and waits
+     * for it to reach the disk
+     * @param file the file to write, which is replaced if it already exists
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        long size = getSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Game is too large to save: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //Shrink the file before mapping it, since a mapped file cannot
+            //be shrunk on every platform
+            channel.truncate(size);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            writeTo(buffer);
+            buffer.force();
+        }
+    }
+    
+    /**
+     * Gets the file a save is written to out of the two a game is kept in
+     * @param file the save file given in the settings
+     * @param saveNumber the number of the save
+     * @return the file itself for even numbers or the other file for odd ones
+     */
+    static Path getSaveFile(Path file, int saveNumber) {
+        return (saveNumber & 1) == 0 ? file : file.resolveSibling(file.getFileName() + ".1");
+    }
+    
+    /**
+     * Reads the newest valid state from the two files a Checkpointer keeps a
+     * game in, passing over one that was spoilt by a crash
+     * @param file the save file given in the settings
+     * @return the state, or null if neither file has been saved to
+     * @throws IOException if neither file could be read as a valid save
+     */
+    public static GameState loadLatest(Path file) throws IOException {
+        GameState latest = null;
+        IOException failure = null;
+        for (int slot = 0; slot < 2; slot++) {
+            Path saveFile = getSaveFile(file, slot);
+            //A file is created empty and only filled in by its first save
+            if (!Files.exists(saveFile) || Files.size(saveFile) == 0) {
+                continue;
+            }
+            try {
+                GameState state = load(saveFile);
+                if (latest == null || state.saveNumber > latest.saveNumber) {
+                    latest = state;
+                }
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        if (latest == null && failure != null) {
+            throw failure;
+        }
+        return latest;
+    }
+    
+    /**
+     * Gets the number of the save this state was read from
+     * @return the save number, or 0 if it was not saved by a Checkpointer
+     */
+    public int getSaveNumber() {
+        return saveNumber;
+    }
+    
+    /**
+     * Reads a state from a save file through a mapping of the file
+     * @param file the file to read
+     * @return the state
+     * @throws IOException if the file cannot be read or is not a valid save
+     */
+    public static GameState load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Save file is too large: " + channel.size() + " bytes");
+            }
+            return readFrom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+}
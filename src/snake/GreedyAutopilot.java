@@ -0,0 +1,39 @@
+package snake;
+
+/**
+ * An Autopilot that always moves to the free neighbouring cell closest to
+ * the apple without looking any further ahead.
+ * @author Ashley Allen
+ */
+public class GreedyAutopilot implements Autopilot {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    @Override
+    public Direction nextDirection(Game game) {
+        Snake snake = game.getSnake();
+        Coordinates apple = game.getApple();
+        int headX = snake.getBodyX(0);
+        int headY = snake.getBodyY(0);
+        
+        //Of the cells the snake could move into next pick the free one that
+        //is closest to the apple
+        Direction best = snake.getDirection();
+        int bestDistance = Integer.MAX_VALUE;
+        for (Direction dir : DIRECTIONS) {
+            if (dir == snake.getDirection().opposite()) {
+                continue;
+            }
+            int x = headX + dir.getDx();
+            int y = headY + dir.getDy();
+            if (x < 0 || x >= game.getGridWidth() || y < 0 || y >= game.getGridHeight() || snake.isOccupied(x, y)) {
+                continue;
+            }
+            int distance = Math.abs(apple.getX() - x) + Math.abs(apple.getY() - y);
+            if (distance < bestDistance) {
+                best = dir;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+}
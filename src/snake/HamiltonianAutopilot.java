@@ -0,0 +1,223 @@
+package snake;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An Autopilot that never dies by following a cycle that visits every cell of
+ * the grid. While the snake is short it takes shortcuts across the cycle
+ * towards the apple as long as doing so cannot cut off its own tail.
+ *
+ * If both sides of the grid are odd no such cycle exists, so the cycle skips
+ * the bottom right corner. That corner is reached with a detour that takes
+ * the place of the cell diagonally next to it whenever the apple is there.
+ * @author Ashley Allen
+ */
+public class HamiltonianAutopilot implements Autopilot {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    //Shortcuts are only taken while the snake covers less than this fraction
+    //of the cycle
+    private static final double SHORTCUT_LIMIT = 0.5;
+    
+    //The number of cells kept free between the head and the tail when taking
+    //a shortcut to allow for the snake growing
+    private static final int SHORTCUT_MARGIN = 3;
+    
+    //Cycles only depend on the grid size so they are shared between instances
+    private static final Map<Long, Cycle> cycles = new ConcurrentHashMap<>();
+    
+    private final int gridWidth, gridHeight;
+    private final Cycle cycle;
+    
+    /**
+     * Creates a new HamiltonianAutopilot for a grid of the specified size
+     * @param gridWidth the width of the game grid, at least 2
+     * @param gridHeight the height of the game grid, at least 2
+     */
+    public HamiltonianAutopilot(int gridWidth, int gridHeight) {
+        if (gridWidth < 2 || gridHeight < 2) {
+            throw new IllegalArgumentException("A cycle needs a grid of at least 2x2 but was " + gridWidth + "x" + gridHeight);
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.cycle = cycles.computeIfAbsent(((long) gridWidth << 32) | gridHeight, key -> new Cycle(gridWidth, gridHeight));
+    }
+    
+    @Override
+    public Direction nextDirection(Game game) {
+        Snake snake = game.getSnake();
+        Coordinates apple = game.getApple();
+        int headX = snake.getBodyX(0);
+        int headY = snake.getBodyY(0);
+        if (headX < 0 || headX >= gridWidth || headY < 0 || headY >= gridHeight) {
+            return snake.getDirection();
+        }
+        int last = snake.getLength() - 1;
+        int headPos = cycle.order[headY * gridWidth + headX];
+        int tailPos = cycle.order[snake.getBodyY(last) * gridWidth + snake.getBodyX(last)];
+        int appleCell = apple.getY() * gridWidth + apple.getX();
+        int appleDistance = distance(headPos, cycle.order[appleCell]);
+        int tailDistance = distance(headPos, tailPos);
+        boolean shortcuts = snake.getLength() < cycle.length * SHORTCUT_LIMIT;
+        
+        //Move to the free neighbour furthest along the cycle that does not
+        //overshoot the apple or come too close to the tail. Without shortcuts
+        //that is always the next cell of the cycle.
+        Direction best = null;
+        int bestDistance = 0;
+        for (Direction dir : DIRECTIONS) {
+            if (dir == snake.getDirection().opposite()) {
+                continue;
+            }
+            int x = headX + dir.getDx();
+            int y = headY + dir.getDy();
+            if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight || !isFree(snake, x, y)) {
+                continue;
+            }
+            int cell = y * gridWidth + x;
+            //The corner is only worth the detour when the apple is in it, and
+            //then the cell it stands in for has to be avoided
+            if ((cell == cycle.corner && cell != appleCell) || (cell == cycle.proxy && appleCell == cycle.corner)) {
+                continue;
+            }
+            int d = distance(headPos, cycle.order[cell]);
+            boolean allowed = d == 1 || (shortcuts && d <= appleDistance && d + SHORTCUT_MARGIN < tailDistance);
+            if (allowed && (d > bestDistance || (d == bestDistance && cell == appleCell))) {
+                best = dir;
+                bestDistance = d;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        
+        //Only reachable before the body has lined up with the cycle, so just
+        //avoid dying this tick
+        for (Direction dir : DIRECTIONS) {
+            int x = headX + dir.getDx();
+            int y = headY + dir.getDy();
+            if (dir != snake.getDirection().opposite() && x >= 0 && x < gridWidth && y >= 0 && y < gridHeight && isFree(snake, x, y)) {
+                return dir;
+            }
+        }
+        return snake.getDirection();
+    }
+    
+    /**
+     * Checks whether the snake can move into a cell. The tail counts as free
+     * because it moves out of the way unless the snake is growing.
+     * @param snake the snake
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return true if the cell is free
+     */
+    private boolean isFree(Snake snake, int x, int y) {
+        if (!snake.isOccupied(x, y)) {
+            return true;
+        }
+        int last = snake.getLength() - 1;
+        return !snake.isGrowing() && snake.getBodyX(last) == x && snake.getBodyY(last) == y;
+    }
+    
+    /**
+     * Gets the number of steps along the cycle from one position to another
+     * @param from the position in the cycle to start at
+     * @param to the position in the cycle to finish at
+     * @return the number of steps, between 0 and the length of the cycle
+     */
+    private int distance(int from, int to) {
+        int d = to - from;
+        return d < 0 ? d + cycle.length : d;
+    }
+    
+    /**
+     * The position of every cell along a cycle through the grid
+     */
+    private static class Cycle {
+        //The position in the cycle of each cell indexed by y * width + x
+        final int[] order;
+        final int length;
+        //The cell left out of the cycle on odd sized grids and the cell whose
+        //place it takes in the cycle, or -1 if every cell is in the cycle
+        final int corner;
+        final int proxy;
+        
+        /**
+         * Builds the cycle for a grid. The cycle starts at the top left, snakes
+         * back and forth along the rows leaving the first column free and then
+         * returns up the first column. This needs an even number of rows, so
+         * if there is an odd number it runs along the columns instead, and if
+         * both are odd the last row is covered by short detours off the row
+         * above.
+         * @param width the width of the grid
+         * @param height the height of the grid
+         */
+        Cycle(int width, int height) {
+            order = new int[width * height];
+            int[] sequence = new int[width * height];
+            int count;
+            if (height % 2 == 0) {
+                count = build(sequence, width, height, width, false, false);
+                corner = -1;
+                proxy = -1;
+            } else if (width % 2 == 0) {
+                count = build(sequence, height, width, width, true, false);
+                corner = -1;
+                proxy = -1;
+            } else {
+                count = build(sequence, width, height - 1, width, false, true);
+                corner = (height - 1) * width + (width - 1);
+                proxy = (height - 2) * width + (width - 2);
+            }
+            for (int i = 0; i < count; i++) {
+                order[sequence[i]] = i;
+            }
+            length = count;
+            if (corner >= 0) {
+                //The detour through the corner replaces the cell diagonally
+                //next to it so it shares that cell's position
+                order[corner] = order[proxy];
+            }
+        }
+        
+        /**
+         * Writes the cells of the cycle in order
+         * @param sequence the array to write the cells to
+         * @param cols the number of cells along each row of the cycle
+         * @param rows the number of rows of the cycle, which must be even
+         * @param width the width of the grid
+         * @param transposed true if the rows of the cycle are grid columns
+         * @param detours true to also cover the row after the last one with
+         * detours, leaving out its last cell
+         * @return the number of cells in the cycle
+         */
+        private static int build(int[] sequence, int cols, int rows, int width, boolean transposed, boolean detours) {
+            int count = 0;
+            sequence[count++] = cell(0, 0, width, transposed);
+            for (int r = 0; r < rows; r++) {
+                if (r % 2 == 0) {
+                    for (int c = 1; c < cols; c++) {
+                        sequence[count++] = cell(c, r, width, transposed);
+                    }
+                } else {
+                    for (int c = cols - 1; c >= 1; c--) {
+                        sequence[count++] = cell(c, r, width, transposed);
+                        if (detours && r == rows - 1 && c % 2 == 1) {
+                            sequence[count++] = cell(c, r + 1, width, transposed);
+                            sequence[count++] = cell(c - 1, r + 1, width, transposed);
+                        }
+                    }
+                }
+            }
+            for (int r = rows - 1; r >= 1; r--) {
+                sequence[count++] = cell(0, r, width, transposed);
+            }
+            return count;
+        }
+        
+        private static int cell(int c, int r, int width, boolean transposed) {
+            return transposed ? c * width + r : r * width + c;
+        }
+    }
+}
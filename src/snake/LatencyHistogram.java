@@ -0,0 +1,131 @@
+package snake;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with a fixed relative precision, in
+ * the style of an HDR histogram. Values below 32 each get their own bucket and
+ * every power of two above that is split into 32 buckets, so any value is
+ * counted within about 3% of its true size using a little over a thousand
+ * buckets for values up to 2^40 nanoseconds.
+ *
+ * Recording does not lock or allocate, so durations can be recorded on one
+ * thread while another reads percentiles. A read taken while values are
+ * being recorded may be out by the values recorded during it.
+ * @author Ashley Allen
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(bucketOf(MAX_VALUE) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Records a duration
+     * @param nanos the duration in nanoseconds, clamped to between 0 and
+     * about 18 minutes
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //Another thread raised the maximum in the meantime so try again
+        }
+    }
+    
+    /**
+     * Gets the bucket a value is counted in
+     * @param value the value, between 0 and MAX_VALUE
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        //The top SUB_BUCKET_BITS bits of the value pick the bucket within its
+        //power of two
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+    
+    /**
+     * Gets the largest value counted in a bucket
+     * @param bucket the index of the bucket
+     * @return the largest value in the bucket
+     */
+    private static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) ((bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    /**
+     * Gets the value that the specified percentage of recorded values are at
+     * or below
+     * @param percentile the percentage, from 0 to 100
+     * @return the value in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(recorded * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    /**
+     * Gets the number of values recorded
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * Gets the largest value recorded
+     * @return the maximum in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * Gets the average of the values recorded
+     * @return the mean in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) total.get() / recorded;
+    }
+    
+    /**
+     * Forgets every recorded value
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
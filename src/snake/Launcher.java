@@ -0,0 +1,172 @@
+package snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+
+/**
+ * The entry point of the game. Reads the settings and either opens the game
+ * window, hosts an arena for players to connect to with --serve or, with
+ * --headless, plays the game with the autopilot or the arena with bots as
+ * fast as possible and prints how it went. Headless runs never touch JavaFX, so they
+ * start without waiting for the toolkit and work where there is no display.
+ * @author Ashley Allen
+ */
+public class Launcher {
+    
+    /**
+     * Starts the game
+     * @param args the command line arguments, described in GameConfig
+     * @throws IOException if the settings or the replay file cannot be read
+     * or written
+     */
+    public static void main(String[] args) throws IOException {
+        GameConfig config;
+        try {
+            config = GameConfig.fromArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        try {
+            if (config.isServe()) {
+                runServer(config);
+            } else if (config.isHeadless() && config.isArena()) {
+                runHeadlessArena(config);
+            } else if (config.isHeadless()) {
+                runHeadless(config);
+            } else {
+                //Main is only loaded here, so JavaFX is only loaded when there
+                //is a window to show
+                Main.main(args);
+            }
+        } catch (IllegalArgumentException ex) {
+            //The settings passed their own checks but the game or arena made
+            //from them did not, such as a save for another grid size
+            System.err.println(ex.getMessage());
+            System.exit(2);
+        }
+    }
+    
+    /**
+     * Plays the configured number of ticks on the current thread with the
+     * autopilot steering and prints the results, carrying on from and saving
+     * to the save file if there is one and adding each game to the
+     * leaderboard if there is one
+     * @param config the settings to play with
+     * @throws IOException if the replay, save or leaderboard file cannot be
+     * read or written
+     */
+    private static void runHeadless(GameConfig config) throws IOException {
+        GameEngine engine = config.createEngine();
+        ReplayRecorder recorder = config.getRecordFile() != null ? new ReplayRecorder(engine, Paths.get(config.getRecordFile())) : null;
+        Checkpointer checkpointer = config.createCheckpointer(engine);
+        Leaderboard leaderboard = config.createLeaderboard();
+        try {
+            GameSimulation simulation = config.createSimulation(recorder != null ? recorder : engine);
+            simulation.setCheckpointer(checkpointer);
+            simulation.setLeaderboard(leaderboard);
+            if (!simulation.isAuto()) {
+                simulation.toggleAuto();
+            }
+            GameMetrics metrics = simulation.getMetrics();
+            engine.setMetrics(metrics);
+            
+            long start = System.nanoTime();
+            for (long i = 0; i < config.getTicks(); i++) {
+                simulation.tick();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            
+            System.out.println(engine.getGridWidth() + "x" + engine.getGridHeight() + " " + simulation.getStrategy() + " seed " + engine.getSeed());
+            System.out.printf("%d ticks in %.3f s (%.0f ticks/s)%n", simulation.getTicks(), seconds, simulation.getTicks() / seconds);
+            System.out.println("games " + simulation.getGames() + " score " + engine.getScore()
+                    + " apples " + metrics.getApples() + " deaths " + metrics.getDeaths());
+            System.out.println(metrics.summary(Phase.TICK));
+            System.out.println(metrics.summary(Phase.AUTOPILOT));
+        } finally {
+            if (recorder != null) {
+                recorder.close();
+            }
+            if (checkpointer != null) {
+                checkpointer.close();
+                System.out.println("saved " + checkpointer.getSaves() + " times, skipped " + checkpointer.getSkipped());
+            }
+            if (leaderboard != null) {
+                leaderboard.close();
+                System.out.println("leaderboard of " + leaderboard.getGames() + " games:");
+                for (GameRecord game : leaderboard.getBest(10)) {
+                    System.out.println("  " + game);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Hosts an arena until the process is stopped, printing how busy the
+     * server is every few seconds
+     * @param config the settings to play with
+     * @throws IOException if the server cannot listen on the port
+     */
+    private static void runServer(GameConfig config) throws IOException {
+        Arena arena = config.createArena();
+        GameServer server = new GameServer(arena, config.getTicksPerSecond(), new InetSocketAddress(config.getPort()));
+        System.out.println("Serving a " + config.getGridWidth() + "x" + config.getGridHeight() + " arena with "
+                + arena.getSnakeCount() + " snakes on port " + server.getPort());
+        Thread thread = new Thread(server, "Snake server");
+        thread.start();
+        try {
+            long lastNanoTime = System.nanoTime();
+            long lastDeltas = 0;
+            long lastDeltaBytes = 0;
+            long lastBytes = 0;
+            while (thread.isAlive()) {
+                thread.join(5000);
+                long now = System.nanoTime();
+                long deltas = server.getDeltasSent() - lastDeltas;
+                System.out.printf("%d connections, %.1f ticks/s, %.0f bytes/tick, %.1f MB/s sent%n",
+                        server.getConnectionCount(), deltas * 1e9 / (now - lastNanoTime),
+                        deltas > 0 ? (double) (server.getDeltaBytes() - lastDeltaBytes) / deltas : 0.0,
+                        (server.getBytesSent() - lastBytes) * 1e3 / (now - lastNanoTime));
+                lastNanoTime = now;
+                lastDeltas = server.getDeltasSent();
+                lastDeltaBytes = server.getDeltaBytes();
+                lastBytes = server.getBytesSent();
+            }
+        } catch (InterruptedException ex) {
+            server.close();
+            Thread.currentThread().interrupt();
+        } finally {
+            arena.shutdown();
+        }
+    }
+    
+    /**
+     * Plays the configured number of ticks of an arena full of bots on the
+     * current thread and prints the results
+     * @param config the settings to play with
+     */
+    private static void runHeadlessArena(GameConfig config) {
+        Arena arena = config.createArena();
+        try {
+            long start = System.nanoTime();
+            for (long i = 0; i < config.getTicks(); i++) {
+                arena.tick();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            
+            int best = 0;
+            for (int id = 0; id < arena.getSnakeCount(); id++) {
+                best = Math.max(best, arena.getScore(id));
+            }
+            System.out.println(config.getGridWidth() + "x" + config.getGridHeight() + " arena with " + arena.getSnakeCount()
+                    + " snakes on " + config.getThreads() + " threads, seed " + config.getSeed());
+            System.out.printf("%d ticks in %.3f s (%.0f ticks/s)%n", arena.getTicks(), seconds, arena.getTicks() / seconds);
+            System.out.println("alive " + arena.getAliveCount() + " apples eaten " + arena.getApplesEaten()
+                    + " deaths " + arena.getDeaths() + " best score " + best);
+        } finally {
+            arena.shutdown();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package snake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * The best games ever played, kept in a file that every finished game is
+ * appended to. The best games are also kept in memory in a heap holding at
+ * most capacity of them with the worst at the top, so a game that would not
+ * make the leaderboard is turned away after a single comparison and asking
+ * for the best games never reads the file.
+ *
+ * The file starts with a fixed size header followed by one fixed size record
+ * per game, each ending with a CRC of the rest of it. A record cut short by a
+ * crash is cut off the file when it is next opened and a record that fails
+ * its CRC is skipped. Games are appended through a buffer so that a batch of
+ * millions of games costs little more than playing them. The buffer is
+ * written when it fills, when a game in it has waited FLUSH_MILLIS and when
+ * the leaderboard is closed. The wait is checked as each game is added and
+ * whenever flushIfDue is called, which a program that only finishes a game
+ * every few minutes has to call regularly for a crash to lose at most the
+ * games of the last second or the last full buffer. Once the file holds
+ * COMPACT_AFTER more games than the leaderboard it is compacted by writing
+ * only the best games to a new file and moving it over the old one, so the
+ * file never has to be read in full however many games have been played and
+ * the others are only remembered as a count in the header.
+ * @author Ashley Allen
+ */
+public class Leaderboard implements Closeable {
+    public static final int DEFAULT_CAPACITY = 100;
+    
+    static final int MAGIC = 0x534E4B4C;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 40;
+    static final int CRC_OFFSET = 36;
+    
+    //The number of games appended past the capacity before compacting
+    private static final int COMPACT_AFTER = 1 << 16;
+    private static final int BUFFER_SIZE = 256 * RECORD_SIZE;
+    //The longest a game is kept in the buffer before it is written
+    private static final long FLUSH_MILLIS = 1000;
+    private static final AutopilotStrategy[] STRATEGIES = AutopilotStrategy.values();
+    
+    private final Path file;
+    private final int capacity;
+    //The best games with the worst of them at the head
+    private final PriorityQueue<GameRecord> best;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    //When the oldest game in the buffer was added
+    private long bufferedTime;
+    
+    //The games compacted out of the file and the games still in it
+    private long droppedGames = 0;
+    private long fileGames = 0;
+    private long corruptRecords = 0;
+    private volatile int bestScore = 0;
+    
+    /**
+     * Opens a leaderboard file, creating it if it does not exist, and reads
+     * the best games from it
+     * @param file the leaderboard file
+     * @param capacity the number of best games to keep
+     * @throws IOException if the file cannot be read or written or is not a
+     * leaderboard
+     */
+    public Leaderboard(Path file, int capacity) throws IOException {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1 but was " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.best = new PriorityQueue<>(capacity, GameRecord.BEST_FIRST.reversed());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                writeHeader(channel, 0);
+            } else {
+                read();
+            }
+            channel.position(channel.size());
+            if (fileGames >= capacity + COMPACT_AFTER) {
+                compact();
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Reads every record in the file into the heap, cutting off a record at
+     * the end that was only partly written
+     * @throws IOException if the file cannot be read or is not a leaderboard
+     */
+    private void read() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            //Keep reading until the header is full
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a leaderboard file: " + file);
+        }
+        if (header.get(4) != VERSION) {
+            throw new IOException("Unsupported leaderboard version: " + header.get(4));
+        }
+        droppedGames = header.getLong(8);
+        
+        long records = (size - HEADER_SIZE) / RECORD_SIZE;
+        long end = HEADER_SIZE + records * RECORD_SIZE;
+        if (end != size) {
+            channel.truncate(end);
+        }
+        //Read through the append buffer, a whole number of records at a time
+        for (long position = HEADER_SIZE; position < end; position += buffer.limit()) {
+            buffer.clear().limit((int) Math.min(BUFFER_SIZE, end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Leaderboard file was cut short while reading it");
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                buffer.get(record.array());
+                GameRecord game = decode();
+                if (game == null) {
+                    corruptRecords++;
+                } else {
+                    offer(game);
+                }
+            }
+        }
+        buffer.clear();
+        fileGames = records - corruptRecords;
+    }
+    
+    /**
+     * Writes the header of a leaderboard file at the start of the file
+     * @param channel the file
+     * @param dropped the number of games compacted out of the file
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeHeader(FileChannel channel, long dropped) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).put(VERSION).put((byte) 0).put((byte) 0).put((byte) 0).putLong(dropped).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+    
+    /**
+     * Adds a finished game to the leaderboard file and to the best games if
+     * it is good enough. Safe to call from several threads at once.
+     * @param score the final score
+     * @param length the length of the snake at the end
+     * @param ticks the number of ticks the game lasted
+     * @param seed the seed the game was started with
+     * @param strategy the autopilot strategy that steered the snake, or null
+     * if it was only steered by hand
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void add(int score, int length, long ticks, long seed, AutopilotStrategy strategy) throws IOException {
+        long time = System.currentTimeMillis();
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        encode(time, score, length, ticks, seed, strategy);
+        if (buffer.position() == 0) {
+            bufferedTime = time;
+        }
+        buffer.put(record.array());
+        fileGames++;
+        //Most games do not make the leaderboard, so only make a record of
+        //the ones that might
+        if (best.size() < capacity || score >= best.peek().getScore()) {
+            offer(new GameRecord(time, score, length, ticks, seed, strategy));
+        }
+        if (fileGames >= capacity + COMPACT_AFTER) {
+            compact();
+        } else {
+            flushIfDue(time);
+        }
+    }
+    
+    /**
+     * Writes the games waiting in the buffer to the file if the oldest of
+     * them has waited FLUSH_MILLIS. Cheap enough to call many times a second.
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flushIfDue() throws IOException {
+        flushIfDue(System.currentTimeMillis());
+    }
+    
+    /**
+     * Writes the games waiting in the buffer to the file if the oldest of
+     * them has waited FLUSH_MILLIS
+     * @param time the current time in milliseconds since the epoch
+     * @throws IOException if the file cannot be written
+     */
+    private void flushIfDue(long time) throws IOException {
+        if (buffer.position() > 0 && time - bufferedTime >= FLUSH_MILLIS) {
+            flush();
+        }
+    }
+    
+    /**
+     * Fills in the record buffer with a game and its CRC
+     * @param time when the game finished, in milliseconds since the epoch
+     * @param score the final score
+     * @param length the length of the snake at the end
+     * @param ticks the number of ticks the game lasted
+     * @param seed the seed of the game
+     * @param strategy the autopilot strategy, or null for none
+     */
+    private void encode(long time, int score, int length, long ticks, long seed, AutopilotStrategy strategy) {
+        record.clear();
+        record.putLong(time).putLong(ticks).putLong(seed).putInt(score).putInt(length);
+        record.put((byte) (strategy != null ? strategy.ordinal() : -1)).put((byte) 0).put((byte) 0).put((byte) 0);
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt((int) crc.getValue());
+    }
+    
+    /**
+     * Reads the game in the record buffer
+     * @return the game, or null if the record fails its CRC
+     */
+    private GameRecord decode() {
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        int strategy = record.get(32);
+        if (record.getInt(CRC_OFFSET) != (int) crc.getValue() || strategy < -1 || strategy >= STRATEGIES.length) {
+            return null;
+        }
+        return new GameRecord(record.getLong(0), record.getInt(24), record.getInt(28), record.getLong(8), record.getLong(16),
+                strategy >= 0 ? STRATEGIES[strategy] : null);
+    }
+    
+    /**
+     * Adds a game to the heap of best games, pushing out the worst of them if
+     * the heap is full and the game is better
+     * @param game the game
+     */
+    private void offer(GameRecord game) {
+        if (best.size() < capacity) {
+            best.add(game);
+        } else if (GameRecord.BEST_FIRST.compare(game, best.peek()) < 0) {
+            best.poll();
+            best.add(game);
+        } else {
+            return;
+        }
+        bestScore = Math.max(bestScore, game.getScore());
+    }
+    
+    /**
+     * Writes the games waiting in the buffer to the file
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Rewrites the file with only the best games, remembering how many others
+     * there were. The new file is written alongside the old one and moved
+     * over it, so a crash part way through leaves the old file as it was.
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void compact() throws IOException {
+        flush();
+        List<GameRecord> games = getBest(capacity);
+        long dropped = droppedGames + fileGames - games.size();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out, dropped);
+            out.position(HEADER_SIZE);
+            for (GameRecord game : games) {
+                encode(game.getTime(), game.getScore(), game.getLength(), game.getTicks(), game.getSeed(), game.getStrategy());
+                record.flip();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+            }
+            out.force(true);
+        }
+        //The old file has to be closed before it can be replaced everywhere
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            droppedGames = dropped;
+            fileGames = games.size();
+        } finally {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+    
+    /**
+     * Gets the best games, best first
+     * @param count the most games to return, which is also limited by the
+     * capacity of the leaderboard
+     * @return the best games
+     */
+    public synchronized List<GameRecord> getBest(int count) {
+        List<GameRecord> games = new ArrayList<>(best);
+        games.sort(GameRecord.BEST_FIRST);
+        return new ArrayList<>(games.subList(0, Math.min(count, games.size())));
+    }
+    
+    /**
+     * Gets the highest score on the leaderboard without locking it
+     * @return the highest score, or 0 if no games have been played
+     */
+    public int getBestScore() {
+        return bestScore;
+    }
+    
+    /**
+     * Gets the number of games ever added, including those compacted out
+     * of the file
+     * @return the number of games
+     */
+    public synchronized long getGames() {
+        return droppedGames + fileGames;
+    }
+    
+    /**
+     * Gets the number of records skipped when the file was opened because
+     * they failed their CRC
+     * @return the number of corrupt records
+     */
+    public synchronized long getCorruptRecords() {
+        return corruptRecords;
+    }
+    
+    /**
+     * Writes any buffered games and closes the file
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package snake;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Opens many connections to a GameServer from one thread, sends random turns
+ * on each and reads everything the server sends back. Prints how many ticks
+ * each connection receives a second and how many bytes each tick costs, to
+ * measure how the server copes with many players.
+ * @author Ashley Allen
+ */
+public class LoadClient {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    private final InetSocketAddress address;
+    private final int connectionCount;
+    private final double turnsPerSecond;
+    private final Random random = new Random(1);
+    
+    private final ByteBuffer turn = ByteBuffer.allocateDirect(1);
+    
+    //Totals since the start, written only while running
+    private int connected = 0;
+    private int closed = 0;
+    private long bytesReceived = 0;
+    private long deltasReceived = 0;
+    
+    /**
+     * Creates a new LoadClient
+     * @param address the address of the server
+     * @param connectionCount the number of connections to open
+     * @param turnsPerSecond how often each connection sends a turn
+     */
+    public LoadClient(InetSocketAddress address, int connectionCount, double turnsPerSecond) {
+        this.address = address;
+        this.connectionCount = connectionCount;
+        this.turnsPerSecond = turnsPerSecond;
+    }
+    
+    /**
+     * Runs the connections for a while, printing a line each second and a
+     * summary at the end
+     * @param seconds how long to run for
+     * @throws IOException if the connections cannot be opened
+     */
+    public void run(int seconds) throws IOException {
+        long turnNanos = (long) (1e9 / turnsPerSecond);
+        Connection[] connections = new Connection[connectionCount];
+        try (Selector selector = Selector.open()) {
+            long now = System.nanoTime();
+            for (int i = 0; i < connectionCount; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                //Spread the turns out so they do not all arrive together
+                connections[i] = new Connection(channel, now + (long) (random.nextDouble() * turnNanos));
+                channel.register(selector, SelectionKey.OP_CONNECT, connections[i]);
+                channel.connect(address);
+            }
+            
+            long startNanoTime = System.nanoTime();
+            long endNanoTime = startNanoTime + seconds * 1_000_000_000L;
+            long secondNanoTime = startNanoTime;
+            long secondBytes = 0;
+            long secondDeltas = 0;
+            //Ticks are only counted once every connection is open
+            long measureNanoTime = -1;
+            long measureBytes = 0;
+            long measureDeltas = 0;
+            while ((now = System.nanoTime()) < endNanoTime) {
+                selector.select(10);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isConnectable()) {
+                        finishConnect(key, connection);
+                    } else if (key.isReadable()) {
+                        read(key, connection);
+                    }
+                }
+                
+                now = System.nanoTime();
+                for (Connection connection : connections) {
+                    if (connection.open && now >= connection.nextTurnNanoTime) {
+                        sendTurn(connection);
+                        connection.nextTurnNanoTime += turnNanos;
+                    }
+                }
+                
+                if (measureNanoTime < 0 && connected + closed == connectionCount) {
+                    measureNanoTime = now;
+                    measureBytes = bytesReceived;
+                    measureDeltas = deltasReceived;
+                }
+                if (now - secondNanoTime >= 1_000_000_000) {
+                    long deltas = deltasReceived - secondDeltas;
+                    System.out.printf("%d connected %d closed, %.1f ticks/s per connection, %.0f bytes/tick%n",
+                            connected, closed, perConnection(deltas) * 1e9 / (now - secondNanoTime),
+                            deltas > 0 ? (double) (bytesReceived - secondBytes) / deltas : 0.0);
+                    secondNanoTime = now;
+                    secondBytes = bytesReceived;
+                    secondDeltas = deltasReceived;
+                }
+            }
+            
+            if (measureNanoTime >= 0 && now > measureNanoTime) {
+                long deltas = deltasReceived - measureDeltas;
+                double elapsed = (now - measureNanoTime) / 1e9;
+                System.out.printf("%d connections: %.1f ticks/s per connection, %.0f bytes/tick, %.1f MB/s in total%n",
+                        connected, perConnection(deltas) / elapsed,
+                        deltas > 0 ? (double) (bytesReceived - measureBytes) / deltas : 0.0,
+                        (bytesReceived - measureBytes) / elapsed / 1e6);
+            } else {
+                System.out.println("Only " + connected + " of " + connectionCount + " connections opened");
+            }
+        } finally {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    connection.channel.close();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Divides a count between the open connections
+     * @param count the total count
+     * @return the count per connection
+     */
+    private double perConnection(long count) {
+        return connected > 0 ? (double) count / connected : 0;
+    }
+    
+    /**
+     * Finishes opening a connection and starts reading from it
+     * @param key the connection's key
+     * @param connection the connection
+     */
+    private void finishConnect(SelectionKey key, Connection connection) {
+        try {
+            connection.channel.finishConnect();
+            connection.open = true;
+            connected++;
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            close(key, connection);
+        }
+    }
+    
+    /**
+     * Reads what the server has sent, only looking at the start of each
+     * message to count the ticks
+     * @param key the connection's key
+     * @param connection the connection
+     */
+    private void read(SelectionKey key, Connection connection) {
+        ByteBuffer input = connection.input;
+        try {
+            int read = connection.channel.read(input);
+            if (read < 0) {
+                close(key, connection);
+                return;
+            }
+            bytesReceived += read;
+        } catch (IOException ex) {
+            close(key, connection);
+            return;
+        }
+        input.flip();
+        while (true) {
+            if (connection.skip > 0) {
+                int n = (int) Math.min(connection.skip, input.remaining());
+                input.position(input.position() + n);
+                connection.skip -= n;
+                if (connection.skip > 0) {
+                    break;
+                }
+            }
+            //The length and the type of the next message
+            if (input.remaining() < 5) {
+                break;
+            }
+            int length = input.getInt();
+            if (input.get() == GameServer.DELTA) {
+                deltasReceived++;
+            }
+            connection.skip = length - 1;
+        }
+        input.compact();
+    }
+    
+    /**
+     * Sends a random turn, dropping it if the connection cannot take it
+     * @param connection the connection
+     */
+    private void sendTurn(Connection connection) {
+        turn.clear();
+        turn.put((byte) DIRECTIONS[random.nextInt(DIRECTIONS.length)].ordinal()).flip();
+        try {
+            connection.channel.write(turn);
+        } catch (IOException ex) {
+            //The connection is closed when it is next read
+        }
+    }
+    
+    /**
+     * Closes a connection the server has closed or that failed
+     * @param key the connection's key
+     * @param connection the connection
+     */
+    private void close(SelectionKey key, Connection connection) {
+        if (connection.open) {
+            connected--;
+        }
+        connection.open = false;
+        closed++;
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {
+            //Nothing more can be done with the connection
+        }
+    }
+    
+    /**
+     * One connection to the server
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocateDirect(16 * 1024);
+        long nextTurnNanoTime;
+        //The number of bytes of the current message still to be read
+        long skip = 0;
+        boolean open = false;
+        
+        Connection(SocketChannel channel, long nextTurnNanoTime) {
+            this.channel = channel;
+            this.nextTurnNanoTime = nextTurnNanoTime;
+        }
+    }
+    
+    /**
+     * Runs the load client from the command line. The optional arguments are
+     * the host, the port, the number of connections, the number of seconds to
+     * run for and the number of turns each connection sends a second.
+     * @param args the command line arguments
+     * @throws IOException if the connections cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameConfig.DEFAULT_PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double turnsPerSecond = args.length > 4 ? Double.parseDouble(args[4]) : 2;
+        new LoadClient(new InetSocketAddress(host, port), connections, turnsPerSecond).run(seconds);
+    }
+}
@@ -1,15 +1,22 @@
 package snake;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import javax.management.JMException;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Font;
+import javafx.stage.Screen;
 import javafx.stage.Stage;
 
 
@@ -22,14 +29,50 @@ import javafx.stage.Stage;
 public class Main extends Application {
     
     @Override
-    public void start(Stage primaryStage) {
-        final int gridWidth = 50;
-        final int gridHeight = 50;
-        final int cellSize = 20;
-        final int frameDelay = 50_000_000;
+    public void start(Stage primaryStage) throws IOException {
+        //The settings from the command line and any properties file. The
+        //grid can be made larger than the screen, in which case only the part
+        //around the snake's head that fits on the screen is shown.
+        final GameConfig config = GameConfig.fromArgs(getParameters().getRaw().toArray(new String[0]));
+        final int cellSize = config.getCellSize();
+        final double maxTicksPerSecond = config.getMaxTicksPerSecond();
+        final Rectangle2D screen = Screen.getPrimary().getVisualBounds();
+        if (config.isArena()) {
+            startArena(primaryStage, config,
+                    Math.max(1, Math.min(config.getGridWidth(), (int) (screen.getWidth() / cellSize))),
+                    Math.max(1, Math.min(config.getGridHeight(), (int) (screen.getHeight() / cellSize))));
+            return;
+        }
         
-        //The canvas that will display the game
-        final Canvas canvas = new Canvas(gridWidth * cellSize, gridHeight * cellSize);
+        //The game itself, carried on from the save file given with
+        //--save=<file> if it exists, in which case the grid is the size of the
+        //saved game, and recorded to a replay file if one was given with
+        //--record=<file>
+        final GameEngine engine = config.createEngine();
+        final int gridWidth = engine.getGridWidth();
+        final int gridHeight = engine.getGridHeight();
+        final int viewWidth = Math.max(1, Math.min(gridWidth, (int) (screen.getWidth() / cellSize)));
+        final int viewHeight = Math.max(1, Math.min(gridHeight, (int) (screen.getHeight() / cellSize)));
+        final String recordFile = config.getRecordFile();
+        final ReplayRecorder recorder = recordFile != null ? new ReplayRecorder(engine, Paths.get(recordFile)) : null;
+        
+        //The game is drawn to a canvas, or with --renderer=pixel to an image
+        //with one pixel per cell, which keeps very large grids smooth
+        final GameRenderer renderer;
+        final Node view;
+        if (config.getRenderer().equals("pixel")) {
+            final PixelRenderer pixelRenderer = new PixelRenderer(gridWidth, gridHeight, viewWidth, viewHeight, cellSize);
+            renderer = pixelRenderer;
+            view = pixelRenderer.getView();
+        } else {
+            final Canvas canvas = new Canvas(viewWidth * cellSize, viewHeight * cellSize);
+            final CanvasRenderer canvasRenderer = new CanvasRenderer(canvas.getGraphicsContext2D(), gridWidth, gridHeight, viewWidth, viewHeight, cellSize);
+            //Repaint the whole game grid whenever the canvas changes size
+            canvas.widthProperty().addListener((obs, oldValue, newValue) -> canvasRenderer.invalidate());
+            canvas.heightProperty().addListener((obs, oldValue, newValue) -> canvasRenderer.invalidate());
+            renderer = canvasRenderer;
+            view = canvas;
+        }
         
         //A label to display the player's current score
         final Label scoreLbl = new Label("Score: 0");
@@ -49,69 +92,240 @@ public class Main extends Application {
         StackPane.setMargin(autoLbl, new Insets(10));
         autoLbl.setFont(new Font("Courier New", 20));
         
-        //A label to display the fps of the game
+        //A label to display the rendered frames and game ticks per second
         final Label fpsLbl = new Label("FPS: ");
         StackPane.setAlignment(fpsLbl, Pos.BOTTOM_RIGHT);
         StackPane.setMargin(fpsLbl, new Insets(10));
         fpsLbl.setFont(new Font("Courier New", 20));
         
+        //A label to display how long ticks and frames are taking, shown and
+        //hidden by pressing d
+        final Label debugLbl = new Label();
+        StackPane.setAlignment(debugLbl, Pos.CENTER_LEFT);
+        StackPane.setMargin(debugLbl, new Insets(10));
+        debugLbl.setFont(new Font("Courier New", 14));
+        debugLbl.setVisible(false);
+        
         //A StackPane to group the nodes together
-        final StackPane root = new StackPane(canvas, scoreLbl, pausedLbl, autoLbl, fpsLbl);
+        final StackPane root = new StackPane(view, scoreLbl, pausedLbl, autoLbl, fpsLbl, debugLbl);
         
         //The main scene
         final Scene scene = new Scene(root);
         
-        //A new GameController to handle the workings of the game
-        final GameController game = new GameController(canvas.getGraphicsContext2D(), gridWidth, gridHeight, cellSize);
+        //A simulation to run the game on its own thread and a GameController
+        //to pass it keyboard input, which saves the game every so often if
+        //there is a save file
+        final GameSimulation simulation = config.createSimulation(recorder != null ? recorder : engine);
+        final Checkpointer checkpointer = config.createCheckpointer(engine);
+        simulation.setCheckpointer(checkpointer);
         
-        //Set it so any keyboard input is redirected to the GameController
-        scene.setOnKeyPressed((KeyEvent t) -> game.handleKeyPressed(t));
+        //Add each finished game to the leaderboard if one was given with
+        //--leaderboard=<file>, and show the best score next to the score
+        final Leaderboard leaderboard = config.createLeaderboard();
+        simulation.setLeaderboard(leaderboard);
+        final GameController game = new GameController(simulation);
         
-        //An animation timer which limits the framerate of the game and handles
-        //updating of the score and paused labels.
+        //Time each part of every tick and make the timings available over JMX
+        final GameMetrics metrics = simulation.getMetrics();
+        engine.setMetrics(metrics);
+        try {
+            metrics.register();
+        } catch (JMException ex) {
+            System.err.println("Could not register metrics: " + ex.getMessage());
+        }
+        
+        //Set it so any keyboard input is redirected to the GameController,
+        //except for plus and minus which change the speed of the game
+        scene.setOnKeyPressed((KeyEvent t) -> {
+            if (t.getCode() == KeyCode.EQUALS || t.getCode() == KeyCode.ADD) {
+                simulation.setTicksPerSecond(Math.min(simulation.getTicksPerSecond() * 2, maxTicksPerSecond));
+            } else if (t.getCode() == KeyCode.MINUS || t.getCode() == KeyCode.SUBTRACT) {
+                simulation.setTicksPerSecond(Math.max(simulation.getTicksPerSecond() / 2, 1));
+            } else if (t.getCode() == KeyCode.D) {
+                debugLbl.setVisible(!debugLbl.isVisible());
+            }
+            game.handleKeyPressed(t);
+        });
+        
+        //An animation timer which draws the latest snapshot of the game every
+        //frame and handles updating of the score and paused labels.
         new AnimationTimer() {
-            long updateNanoTime = System.nanoTime();
             long secondNanoTime = System.nanoTime();
+            long secondTicks = 0;
+            long lastFrameNanoTime = -1;
             int frameCounter = 0;
             
             @Override
             public void handle(long currentNanoTime) {
-                //If enough time has passed between ticks then calculate the
-                //next game state and update the labels
-                if (currentNanoTime - updateNanoTime >= frameDelay) {
-                    game.tick();
-                    scoreLbl.setText("Score: " + game.getScore());
-                    if (game.isPaused()) {
+                if (lastFrameNanoTime >= 0) {
+                    metrics.record(Phase.FRAME, currentNanoTime - lastFrameNanoTime);
+                }
+                lastFrameNanoTime = currentNanoTime;
+                
+                //Hold on to the latest snapshot while drawing it so the
+                //simulation thread cannot write over it
+                GameSnapshot snapshot = simulation.getSnapshots().acquire();
+                try {
+                    long drawStart = System.nanoTime();
+                    renderer.render(snapshot, drawStart);
+                    metrics.record(Phase.DRAW, System.nanoTime() - drawStart);
+                    frameCounter++;
+                    
+                    if (leaderboard != null) {
+                        scoreLbl.setText("Score: " + snapshot.getScore() + " Best: " + Math.max(snapshot.getScore(), leaderboard.getBestScore()));
+                    } else {
+                        scoreLbl.setText("Score: " + snapshot.getScore());
+                    }
+                    if (snapshot.isPaused()) {
                         pausedLbl.setText("Paused");
                     } else {
                         pausedLbl.setText("");
                     }
-                    if (game.isAuto()) {
-                        autoLbl.setText("Auto");
+                    if (snapshot.isAuto()) {
+                        autoLbl.setText("Auto (" + snapshot.getStrategy().name().toLowerCase() + ")");
                     } else {
                         autoLbl.setText("");
-                    }                    
-                    updateNanoTime = currentNanoTime;
-                    frameCounter++;
-                }
-                
-                //If a second has passed then update the fps label
-                if (currentNanoTime - secondNanoTime >= 1_000_000_000) {
-                    fpsLbl.setText("FPS: " + frameCounter);
-                    frameCounter = 0;
-                    secondNanoTime = currentNanoTime;
+                    }
+                    
+                    //If a second has passed then update the fps label
+                    if (currentNanoTime - secondNanoTime >= 1_000_000_000) {
+                        fpsLbl.setText("FPS: " + frameCounter + " TPS: " + (snapshot.getTicks() - secondTicks));
+                        if (debugLbl.isVisible()) {
+                            debugLbl.setText(metrics.summary(Phase.TICK) + "\n"
+                                    + metrics.summary(Phase.DRAW) + "\n"
+                                    + metrics.summary(Phase.FRAME) + "\n"
+                                    + "apples " + metrics.getApples() + " deaths " + metrics.getDeaths()
+                                    + " replans " + metrics.getReplans());
+                        }
+                        frameCounter = 0;
+                        secondTicks = snapshot.getTicks();
+                        secondNanoTime = currentNanoTime;
+                    }
+                } finally {
+                    simulation.getSnapshots().release();
                 }
             }
             
         }.start();
         
+        //Stop the simulation thread, finish the replay, save the game and
+        //close the leaderboard when the window is closed
+        primaryStage.setOnHidden(e -> {
+            simulation.stop();
+            if (recorder != null) {
+                try {
+                    recorder.close();
+                } catch (IOException ex) {
+                    System.err.println("Could not save replay: " + ex.getMessage());
+                }
+            }
+            if (checkpointer != null) {
+                try {
+                    checkpointer.close();
+                } catch (IOException ex) {
+                    System.err.println("Could not save game: " + ex.getMessage());
+                }
+            }
+            if (leaderboard != null) {
+                try {
+                    leaderboard.close();
+                } catch (IOException ex) {
+                    System.err.println("Could not save leaderboard: " + ex.getMessage());
+                }
+            }
+        });
+        simulation.start();
+        
         primaryStage.setTitle("Snake");
         primaryStage.setScene(scene);
         primaryStage.show();
     }
 
     /**
-     * @param args the command line arguments
+     * Shows an arena with many snakes, the first of which is steered with the
+     * arrow keys. The arena ticks on its own thread, spreading the work of
+     * picking each bot's move over other threads, and each frame draws the
+     * latest snapshot of the part in view.
+     * @param primaryStage the window to show the arena in
+     * @param config the settings to play with
+     * @param viewWidth the number of columns of cells shown
+     * @param viewHeight the number of rows of cells shown
+     */
+    private void startArena(Stage primaryStage, GameConfig config, int viewWidth, int viewHeight) {
+        final Arena arena = config.createArena();
+        final ArenaRenderer renderer = new ArenaRenderer(arena, viewWidth, viewHeight, config.getCellSize());
+        final ArenaSimulation simulation = new ArenaSimulation(arena, config.getTicksPerSecond(), viewWidth, viewHeight);
+        
+        //A label to display the player's score and how many snakes are alive
+        final Label scoreLbl = new Label();
+        StackPane.setAlignment(scoreLbl, Pos.TOP_LEFT);
+        StackPane.setMargin(scoreLbl, new Insets(10));
+        scoreLbl.setFont(new Font("Courier New", 20));
+        
+        //A label to display whether the game is paused or not
+        final Label pausedLbl = new Label();
+        StackPane.setAlignment(pausedLbl, Pos.TOP_RIGHT);
+        StackPane.setMargin(pausedLbl, new Insets(10));
+        pausedLbl.setFont(new Font("Courier New", 20));
+        
+        final StackPane root = new StackPane(renderer.getView(), scoreLbl, pausedLbl);
+        final Scene scene = new Scene(root);
+        
+        //The arrow keys steer the player, p pauses and plus and minus change
+        //the speed of the game
+        scene.setOnKeyPressed((KeyEvent t) -> {
+            switch (t.getCode()) {
+                case UP:
+                    simulation.queueTurn(Direction.NORTH);
+                    break;
+                case RIGHT:
+                    simulation.queueTurn(Direction.EAST);
+                    break;
+                case DOWN:
+                    simulation.queueTurn(Direction.SOUTH);
+                    break;
+                case LEFT:
+                    simulation.queueTurn(Direction.WEST);
+                    break;
+                case P:
+                    simulation.togglePaused();
+                    break;
+                case EQUALS:
+                case ADD:
+                    simulation.setTicksPerSecond(Math.min(simulation.getTicksPerSecond() * 2, config.getMaxTicksPerSecond()));
+                    break;
+                case MINUS:
+                case SUBTRACT:
+                    simulation.setTicksPerSecond(Math.max(simulation.getTicksPerSecond() / 2, 1));
+                    break;
+            }
+            t.consume();
+        });
+        
+        new AnimationTimer() {
+            @Override
+            public void handle(long currentNanoTime) {
+                ArenaSnapshot snapshot = simulation.getSnapshots().acquire();
+                try {
+                    renderer.render(snapshot);
+                    scoreLbl.setText("Score: " + snapshot.getScore() + " Alive: " + snapshot.getAliveCount() + "/" + snapshot.getSnakeCount());
+                    pausedLbl.setText(snapshot.isPaused() ? "Paused" : "");
+                } finally {
+                    simulation.getSnapshots().release();
+                }
+            }
+        }.start();
+        
+        simulation.start();
+        primaryStage.setOnHidden(e -> simulation.stop());
+        primaryStage.setTitle("Snake Arena");
+        primaryStage.setScene(scene);
+        primaryStage.show();
+    }
+    
+    /**
+     * Opens the game window. Use Launcher to also be able to run headless.
+     * @param args the command line arguments, described in GameConfig
      */
     public static void main(String[] args) {
         launch(args);
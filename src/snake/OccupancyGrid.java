@@ -0,0 +1,155 @@
+package snake;
+
+import java.util.Arrays;
+
+/**
+ * One bit per cell of a grid recording whether the snake is in it. The grid is
+ * split into square chunks of 64 by 64 cells and a chunk is only allocated
+ * while the snake has a part inside it, so the memory used depends on the
+ * size of the snake rather than the size of the grid. Chunks that empty are
+ * kept in a small pool and reused rather than thrown away.
+ * @author Ashley Allen
+ */
+public class OccupancyGrid {
+    private static final int CHUNK_BITS = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int POOL_SIZE = 16;
+    
+    private final int gridWidth, gridHeight;
+    private final int chunksAcross;
+    
+    //Each chunk holds one long per row of cells, and alongside it the number
+    //of cells in it that are set
+    private final long[][] chunks;
+    private final int[] counts;
+    
+    private final long[][] pool = new long[POOL_SIZE][];
+    private int pooled = 0;
+    
+    /**
+     * Creates a new OccupancyGrid with every cell clear
+     * @param gridWidth the width of the grid
+     * @param gridHeight the height of the grid
+     */
+    public OccupancyGrid(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.chunksAcross = (gridWidth + CHUNK_MASK) >>> CHUNK_BITS;
+        int chunksDown = (gridHeight + CHUNK_MASK) >>> CHUNK_BITS;
+        this.chunks = new long[chunksAcross * chunksDown][];
+        this.counts = new int[chunks.length];
+    }
+    
+    /**
+     * Checks whether a cell is set
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return true if the cell is set, false otherwise or if the cell is
+     * outside the grid
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+            return false;
+        }
+        long[] chunk = chunks[chunkIndex(x, y)];
+        return chunk != null && (chunk[y & CHUNK_MASK] & (1L << x)) != 0;
+    }
+    
+    /**
+     * Sets or clears a cell. Cells outside the grid are ignored.
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @param value true to set the cell, false to clear it
+     */
+    public void set(int x, int y, boolean value) {
+        if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+            return;
+        }
+        int index = chunkIndex(x, y);
+        long[] chunk = chunks[index];
+        //Shifting a long only uses the bottom six bits of x
+        long bit = 1L << x;
+        if (value) {
+            if (chunk == null) {
+                chunk = takeChunk();
+                chunks[index] = chunk;
+            }
+            if ((chunk[y & CHUNK_MASK] & bit) == 0) {
+                chunk[y & CHUNK_MASK] |= bit;
+                counts[index]++;
+            }
+        } else if (chunk != null && (chunk[y & CHUNK_MASK] & bit) != 0) {
+            chunk[y & CHUNK_MASK] &= ~bit;
+            if (--counts[index] == 0) {
+                releaseChunk(chunk);
+                chunks[index] = null;
+            }
+        }
+    }
+    
+    /**
+     * Makes this grid a copy of another grid of the same size
+     * @param other the grid to copy
+     */
+    public void copyFrom(OccupancyGrid other) {
+        for (int i = 0; i < chunks.length; i++) {
+            if (other.chunks[i] == null) {
+                if (chunks[i] != null) {
+                    releaseChunk(chunks[i]);
+                    chunks[i] = null;
+                }
+            } else {
+                if (chunks[i] == null) {
+                    chunks[i] = takeChunk();
+                }
+                System.arraycopy(other.chunks[i], 0, chunks[i], 0, CHUNK_SIZE);
+            }
+            counts[i] = other.counts[i];
+        }
+    }
+    
+    /**
+     * Gets the number of chunks currently allocated
+     * @return the number of chunks in use
+     */
+    public int getChunkCount() {
+        int count = 0;
+        for (long[] chunk : chunks) {
+            if (chunk != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the index of the chunk that holds a cell
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return the index of the chunk
+     */
+    private int chunkIndex(int x, int y) {
+        return (y >>> CHUNK_BITS) * chunksAcross + (x >>> CHUNK_BITS);
+    }
+    
+    /**
+     * Gets an empty chunk from the pool, or a new one if the pool is empty
+     * @return the chunk
+     */
+    private long[] takeChunk() {
+        return pooled > 0 ? pool[--pooled] : new long[CHUNK_SIZE];
+    }
+    
+    /**
+     * Clears a chunk that is no longer needed and keeps it for reuse if the
+     * pool has room
+     * @param chunk the chunk
+     */
+    private void releaseChunk(long[] chunk) {
+        if (pooled < POOL_SIZE) {
+            Arrays.fill(chunk, 0);
+            pool[pooled++] = chunk;
+        }
+    }
+}
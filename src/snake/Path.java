@@ -1,82 +1,299 @@
 package snake;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Used to calculate the best path to the apple for the snake
- * CURRENTLY NOT USED
+ * Used to calculate the best path to the apple for the snake. Performs a
+ * breadth first search from the snake's head to the apple around the snake's
+ * body. All of the search buffers are allocated once for the size of the grid
+ * and reused for every search.
+ * 
+ * Once a path has been found the snake follows it one step per tick. A new
+ * search is only made when a new apple appears, when the snake is not where
+ * the path expects it to be or when the next cell on the path is blocked.
  * @author Ashley Allen
  */
-public class Path {
+public class Path implements Autopilot {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
     private final List<Direction> path = new ArrayList<>();
-    private Direction direction;
-    private Coordinates pos;
+    private final int gridWidth, gridHeight;
+    
+    //For each cell the search that last visited it and the cell it was reached
+    //from. Using a stamp rather than a boolean means the buffers never need
+    //clearing between searches.
+    private final int[] visited;
+    private final int[] parent;
+    private final int[] queue;
+    private int stamp = 0;
+    
+    //The step of the path to take next, the apple the path leads to and the
+    //cell the snake's head should be in when taking that step
+    private int cursor = 0;
+    private long plannedApple = -1;
+    private int expectedX, expectedY;
+    
+    private long plansReused = 0;
+    private long plansComputed = 0;
+    
+    /**
+     * Creates a new Path for a grid of the specified size
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     */
+    public Path(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        visited = new int[gridWidth * gridHeight];
+        parent = new int[gridWidth * gridHeight];
+        queue = new int[gridWidth * gridHeight];
+    }
+    
+    /**
+     * Chooses the next step of the shortest path to the apple, searching for
+     * a new path only if the current one is no longer valid. If the apple
+     * cannot be reached the snake moves towards whichever neighbouring cell
+     * has the most free space around it.
+     * @param game the game being played
+     * @return the direction to turn in
+     */
+    @Override
+    public Direction nextDirection(Game game) {
+        if (isPlanValid(game)) {
+            plansReused++;
+        } else {
+            plansComputed++;
+            if (!search(game)) {
+                return mostSpaciousDirection(game.getSnake());
+            }
+        }
+        Direction dir = path.get(cursor++);
+        expectedX += dir.getDx();
+        expectedY += dir.getDy();
+        return dir;
+    }
+    
+    /**
+     * Checks whether the rest of the current path can still be followed
+     * @param game the game being played
+     * @return true if the next step of the path leads to the current apple
+     * from where the snake is and into a free cell
+     */
+    private boolean isPlanValid(Game game) {
+        Snake snake = game.getSnake();
+        if (cursor >= path.size() || plannedApple != game.getApplesSpawned()) {
+            return false;
+        }
+        if (snake.getBodyX(0) != expectedX || snake.getBodyY(0) != expectedY) {
+            return false;
+        }
+        //The body only ever moves into cells the path has already passed
+        //through, so only the very next cell can have become blocked
+        Direction dir = path.get(cursor);
+        return isFree(snake, expectedX + dir.getDx(), expectedY + dir.getDy());
+    }
+    
+    /**
+     * Searches for the shortest path from the snake's head to the apple and
+     * stores it so it can be read with getPath and followed by nextDirection
+     * @param game the game being played
+     * @return true if a path to the apple was found
+     */
+    public boolean search(Game game) {
+        path.clear();
+        cursor = 0;
+        Snake snake = game.getSnake();
+        Coordinates apple = game.getApple();
+        int start = cellAt(snake.getBodyX(0), snake.getBodyY(0));
+        int target = cellAt(apple.getX(), apple.getY());
+        if (start < 0 || target < 0) {
+            return false;
+        }
+        
+        int head = 0;
+        int tail = 0;
+        int current = nextStamp();
+        visited[start] = current;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            if (cell == target) {
+                //Walk back from the apple to the head recording each step
+                for (int c = target; c != start; c = parent[c]) {
+                    path.add(directionBetween(parent[c], c));
+                }
+                Collections.reverse(path);
+                plannedApple = game.getApplesSpawned();
+                expectedX = snake.getBodyX(0);
+                expectedY = snake.getBodyY(0);
+                return true;
+            }
+            int x = cell % gridWidth;
+            int y = cell / gridWidth;
+            for (Direction dir : DIRECTIONS) {
+                int nextX = x + dir.getDx();
+                int nextY = y + dir.getDy();
+                int next = cellAt(nextX, nextY);
+                if (next >= 0 && visited[next] != current && isFree(snake, nextX, nextY)) {
+                    visited[next] = current;
+                    parent[next] = cell;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return false;
+    }
     
-    public Path(Coordinates startPos) {
-        pos = startPos;
+    /**
+     * Picks the direction whose neighbouring cell can reach the most free
+     * cells, used when there is no path to the apple
+     * @param snake the snake being steered
+     * @return the direction to turn in
+     */
+    private Direction mostSpaciousDirection(Snake snake) {
+        Direction best = snake.getDirection();
+        int bestSpace = -1;
+        for (Direction dir : DIRECTIONS) {
+            int nextX = snake.getBodyX(0) + dir.getDx();
+            int nextY = snake.getBodyY(0) + dir.getDy();
+            int next = cellAt(nextX, nextY);
+            if (next >= 0 && isFree(snake, nextX, nextY)) {
+                int space = countReachable(snake, next);
+                if (space > bestSpace) {
+                    best = dir;
+                    bestSpace = space;
+                }
+            }
+        }
+        return best;
     }
     
-    public Coordinates getPos() {
-        return pos;
+    /**
+     * Counts the free cells that can be reached from the specified cell
+     * @param snake the snake whose body blocks the search
+     * @param start the cell to start from
+     * @return the number of reachable cells including the start
+     */
+    private int countReachable(Snake snake, int start) {
+        int head = 0;
+        int tail = 0;
+        int current = nextStamp();
+        visited[start] = current;
+        queue[tail++] = start;
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % gridWidth;
+            int y = cell / gridWidth;
+            for (Direction dir : DIRECTIONS) {
+                int nextX = x + dir.getDx();
+                int nextY = y + dir.getDy();
+                int next = cellAt(nextX, nextY);
+                if (next >= 0 && visited[next] != current && isFree(snake, nextX, nextY)) {
+                    visited[next] = current;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return tail;
     }
     
-    public void changeDirection(Direction dir) {
-        switch (dir) {
-            case NORTH:
-                if (direction != Direction.SOUTH) direction = Direction.NORTH;
-                break;
-            case EAST:
-                if (direction != Direction.WEST) direction = Direction.EAST;
-                break;
-            case SOUTH:
-                if (direction != Direction.NORTH) direction = Direction.SOUTH;
-                break;
-            case WEST:
-                if (direction != Direction.EAST) direction = Direction.WEST;
-                break;
+    /**
+     * Starts a new search, resetting the visited stamps if they overflow
+     * @return the stamp for the new search
+     */
+    private int nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            stamp = 1;
         }
+        return stamp;
     }
     
-    public void moveForward() {
-        switch (direction) {
-            case NORTH:
-                pos = pos.add(0, -1);
-                break;
-            case EAST:
-                pos = pos.add(1, 0);
-                break;
-            case SOUTH:
-                pos = pos.add(0, 1);
-                break;
-            case WEST:
-                pos = pos.add(-1, 0);
-                break;
-        }    
+    /**
+     * Checks whether the snake can move into a cell. The tail counts as free
+     * because it moves out of the way unless the snake is growing.
+     * @param snake the snake
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return true if the cell is free
+     */
+    private boolean isFree(Snake snake, int x, int y) {
+        if (!snake.isOccupied(x, y)) {
+            return true;
+        }
+        int last = snake.getLength() - 1;
+        return !snake.isGrowing() && snake.getBodyX(last) == x && snake.getBodyY(last) == y;
     }
     
-    public void moveBack() {
-        switch (direction) {
-            case NORTH:
-                pos = pos.add(0, 1);
-                break;
-            case EAST:
-                pos = pos.add(-1, 0);
-                break;
-            case SOUTH:
-                pos = pos.add(0, -1);
-                break;
-            case WEST:
-                pos = pos.add(1, 0);
-                break;
-        }            
+    /**
+     * Gets the index of a cell or -1 if it is outside the grid
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return the index of the cell
+     */
+    private int cellAt(int x, int y) {
+        if (x < 0 || x >= gridWidth || y < 0 || y >= gridHeight) {
+            return -1;
+        }
+        return y * gridWidth + x;
     }
     
-    public void addDirection() {
-        path.add(direction);
+    /**
+     * Gets the direction of a step between two neighbouring cells
+     * @param from the index of the cell moved from
+     * @param to the index of the cell moved to
+     * @return the direction of the step
+     */
+    private Direction directionBetween(int from, int to) {
+        if (to == from + 1) {
+            return Direction.EAST;
+        } else if (to == from - 1) {
+            return Direction.WEST;
+        } else if (to > from) {
+            return Direction.SOUTH;
+        } else {
+            return Direction.NORTH;
+        }
     }
     
+    /**
+     * Gets a step of the most recently found path
+     * @param index the index of the step, 0 being the first
+     * @return the direction of the step
+     */
     public Direction getPath(int index) {
         return path.get(index);
     }
+    
+    /**
+     * Gets the number of steps in the most recently found path
+     * @return the length of the path
+     */
+    public int getLength() {
+        return path.size();
+    }
+    
+    /**
+     * Gets the number of ticks that followed an existing path
+     * @return the number of times a path was reused
+     */
+    public long getPlansReused() {
+        return plansReused;
+    }
+    
+    /**
+     * Gets the number of ticks that needed a new search
+     * @return the number of times a path was recomputed
+     */
+    public long getPlansComputed() {
+        return plansComputed;
+    }
+    
+    @Override
+    public long getReplans() {
+        return plansComputed;
+    }
 }
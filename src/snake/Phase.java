@@ -0,0 +1,22 @@
+package snake;
+
+/**
+ * The parts of running and drawing the game that are timed by GameMetrics
+ * @author Ashley Allen
+ */
+public enum Phase {
+    /** A whole tick including the autopilot */
+    TICK,
+    /** The autopilot choosing a direction */
+    AUTOPILOT,
+    /** Moving the snake and updating the free cells */
+    MOVE,
+    /** Checking whether the snake has collided */
+    COLLISION,
+    /** Placing a new apple */
+    APPLE,
+    /** Drawing a frame */
+    DRAW,
+    /** The time from the start of one frame to the start of the next */
+    FRAME
+}
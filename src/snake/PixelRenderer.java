@@ -0,0 +1,138 @@
+package snake;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws a game into an image with one pixel per cell, which an ImageView then
+ * scales up to the size of the cells without smoothing. Changed cells are
+ * written into an int array and copied into the image once per frame, so the
+ * cost of a frame depends on how much changed rather than on the size of the
+ * grid or of the cells. This keeps large grids smooth where drawing each cell to a canvas
+ * cannot, at the cost of the head jumping between cells rather than sliding.
+ * @author Ashley Allen
+ */
+public class PixelRenderer extends GameRenderer {
+    private final int[] pixels;
+    private final WritableImage image;
+    private final ImageView view;
+    private final PixelFormat<IntBuffer> format = PixelFormat.getIntArgbPreInstance();
+    
+    //The rectangles of pixels changed since the image was last updated as
+    //minX, minY, maxX, maxY. The head, the tail and the apples are usually far
+    //apart, so copying a few small rectangles is much cheaper than copying the
+    //one large rectangle around them all, which they are only merged into if
+    //there are too many.
+    private static final int MAX_CHANGES = 8;
+    private final int[] changes = new int[MAX_CHANGES * 4];
+    private int changeCount = 0;
+    
+    /**
+     * Initialises a new PixelRenderer that shows the whole game grid
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param cellSize the size in pixels of each cell when shown
+     */
+    public PixelRenderer(int gridWidth, int gridHeight, int cellSize) {
+        this(gridWidth, gridHeight, gridWidth, gridHeight, cellSize);
+    }
+    
+    /**
+     * Initialises a new PixelRenderer that shows part of the game grid around
+     * the snake's head. The image only holds the cells in view, so it stays
+     * small however large the grid is.
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param viewWidth the number of columns of cells shown
+     * @param viewHeight the number of rows of cells shown
+     * @param cellSize the size in pixels of each cell when shown
+     */
+    public PixelRenderer(int gridWidth, int gridHeight, int viewWidth, int viewHeight, int cellSize) {
+        super(gridWidth, gridHeight, viewWidth, viewHeight);
+        pixels = new int[viewWidth * viewHeight];
+        image = new WritableImage(viewWidth, viewHeight);
+        view = new ImageView(image);
+        view.setSmooth(false);
+        view.setFitWidth(viewWidth * cellSize);
+        view.setFitHeight(viewHeight * cellSize);
+    }
+    
+    @Override
+    protected void fillBackground(Color color) {
+        Arrays.fill(pixels, toArgb(color));
+        changeCount = 0;
+        addChange(0, 0, viewWidth - 1, viewHeight - 1);
+    }
+    
+    @Override
+    protected void fillCells(Color color, int minX, int minY, int maxX, int maxY) {
+        int argb = toArgb(color);
+        for (int y = minY; y <= maxY; y++) {
+            Arrays.fill(pixels, y * viewWidth + minX, y * viewWidth + maxX + 1, argb);
+        }
+        addChange(minX, minY, maxX, maxY);
+    }
+    
+    /**
+     * Remembers a rectangle of pixels that needs copying to the image,
+     * merging every rectangle into one if there are too many
+     * @param minX the x coordinate of the leftmost pixels
+     * @param minY the y coordinate of the topmost pixels
+     * @param maxX the x coordinate of the rightmost pixels
+     * @param maxY the y coordinate of the bottommost pixels
+     */
+    private void addChange(int minX, int minY, int maxX, int maxY) {
+        if (changeCount == MAX_CHANGES) {
+            for (int i = 1; i < changeCount; i++) {
+                changes[0] = Math.min(changes[0], changes[i * 4]);
+                changes[1] = Math.min(changes[1], changes[i * 4 + 1]);
+                changes[2] = Math.max(changes[2], changes[i * 4 + 2]);
+                changes[3] = Math.max(changes[3], changes[i * 4 + 3]);
+            }
+            changeCount = 1;
+        }
+        changes[changeCount * 4] = minX;
+        changes[changeCount * 4 + 1] = minY;
+        changes[changeCount * 4 + 2] = maxX;
+        changes[changeCount * 4 + 3] = maxY;
+        changeCount++;
+    }
+    
+    @Override
+    protected void finishFrame() {
+        for (int i = 0; i < changeCount; i++) {
+            int minX = changes[i * 4];
+            int minY = changes[i * 4 + 1];
+            int maxX = changes[i * 4 + 2];
+            int maxY = changes[i * 4 + 3];
+            image.getPixelWriter().setPixels(minX, minY, maxX - minX + 1, maxY - minY + 1,
+                    format, pixels, minY * viewWidth + minX, viewWidth);
+        }
+        changeCount = 0;
+    }
+    
+    /**
+     * Converts a colour to a premultiplied ARGB pixel
+     * @param color the Color to convert
+     * @return the pixel value
+     */
+    static int toArgb(Color color) {
+        int a = (int) Math.round(color.getOpacity() * 255);
+        int r = (int) Math.round(color.getRed() * color.getOpacity() * 255);
+        int g = (int) Math.round(color.getGreen() * color.getOpacity() * 255);
+        int b = (int) Math.round(color.getBlue() * color.getOpacity() * 255);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+    
+    /**
+     * Gets the node that shows the game
+     * @return the ImageView showing the game
+     */
+    public ImageView getView() {
+        return view;
+    }
+}
@@ -0,0 +1,266 @@
+package snake;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Plays back a replay written by a ReplayRecorder by simulating the game again
+ * headless with the same seed and turns. Playback can run as fast as the game
+ * can be stepped or jump to any tick.
+ *
+ * The state of the game is saved every KEYFRAME_INTERVAL ticks the first time
+ * playback passes that tick, so seeking backwards or to a tick that has
+ * already been reached only has to simulate from the nearest keyframe. A
+ * keyframe holds the snake and the random number generator rather than a
+ * whole engine, but on grids small enough to keep a set of free cells it also
+ * has to hold the order of every cell for apples to appear in the same
+ * places. So that a long replay on a large grid does not run out of memory,
+ * every other keyframe is dropped and the interval doubled whenever the
+ * keyframes take more than MAX_KEYFRAME_BYTES.
+ * @author Ashley Allen
+ */
+public class ReplayPlayer {
+    public static final int KEYFRAME_INTERVAL = 1024;
+    public static final long MAX_KEYFRAME_BYTES = 64L << 20;
+    
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    private final GameEngine engine;
+    private final long totalTicks;
+    
+    //The tick of each turn and the direction turned in, in tick order
+    private long[] eventTicks = new long[64];
+    private Direction[] eventDirections = new Direction[64];
+    private int eventCount = 0;
+    
+    private final List<GameState> keyframes = new ArrayList<>();
+    private int keyframeInterval = KEYFRAME_INTERVAL;
+    private long keyframeBytes = 0;
+    private long tick = 0;
+    private int nextEvent = 0;
+    
+    /**
+     * Reads a replay file and sets up the game at its first tick
+     * @param file the replay file to read
+     * @throws IOException if the file cannot be read or is not a replay
+     */
+    public ReplayPlayer(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Replay is too large: " + channel.size() + " bytes");
+            }
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //Keep reading until the buffer is full
+            }
+            buffer.flip();
+        }
+        if (buffer.remaining() < ReplayRecorder.HEADER_SIZE || buffer.getInt() != ReplayRecorder.MAGIC) {
+            throw new IOException("Not a replay file: " + file);
+        }
+        byte version = buffer.get();
+        if (version != ReplayRecorder.VERSION) {
+            throw new IOException("Unsupported replay version: " + version);
+        }
+        long seed = buffer.getLong();
+        int gridWidth = buffer.getInt();
+        int gridHeight = buffer.getInt();
+        int startX = buffer.getInt();
+        int startY = buffer.getInt();
+        int startLength = buffer.getInt();
+        Direction startDirection = DIRECTIONS[buffer.get() & 3];
+        long recordedTicks = buffer.getLong();
+        
+        readEvents(buffer);
+        //A recording that was never closed has no total, so it is played up
+        //to its last turn
+        if (recordedTicks >= 0) {
+            totalTicks = recordedTicks;
+        } else {
+            totalTicks = eventCount > 0 ? eventTicks[eventCount - 1] + 1 : 0;
+        }
+        
+        engine = new GameEngine(gridWidth, gridHeight, seed, startX, startY, startLength, startDirection);
+        addKeyframe();
+    }
+    
+    /**
+     * Decodes every turn after the header
+     * @param buffer the contents of the file positioned after the header
+     * @throws IOException if the last turn is cut off
+     */
+    private void readEvents(ByteBuffer buffer) throws IOException {
+        long eventTick = 0;
+        while (buffer.hasRemaining()) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (!buffer.hasRemaining() || shift > 63) {
+                    throw new IOException("Replay ends part way through a turn");
+                }
+                b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            
+            eventTick += value >>> 2;
+            if (eventCount == eventTicks.length) {
+                eventTicks = Arrays.copyOf(eventTicks, eventCount * 2);
+                eventDirections = Arrays.copyOf(eventDirections, eventCount * 2);
+            }
+            eventTicks[eventCount] = eventTick;
+            eventDirections[eventCount] = DIRECTIONS[(int) value & 3];
+            eventCount++;
+        }
+    }
+    
+    /**
+     * Plays the next tick of the replay, making the recorded turn first if
+     * there is one
+     * @return what happened to the snake during the tick
+     */
+    public StepResult step() {
+        if (nextEvent < eventCount && eventTicks[nextEvent] == tick) {
+            engine.changeDirection(eventDirections[nextEvent++]);
+        }
+        StepResult result = engine.step();
+        tick++;
+        if (tick % keyframeInterval == 0 && tick / keyframeInterval == keyframes.size()) {
+            addKeyframe();
+        }
+        return result;
+    }
+    
+    /**
+     * Saves the state of the game at the current tick as the next keyframe,
+     * thinning out the keyframes if they have grown too large
+     */
+    private void addKeyframe() {
+        GameState state = new GameState();
+        engine.saveState(state);
+        keyframes.add(state);
+        keyframeBytes += getBytes(state);
+        while (keyframeBytes > MAX_KEYFRAME_BYTES && keyframes.size() > 1) {
+            //Keeps the keyframes on ticks that are a multiple of the new
+            //interval, including the first
+            int kept = 0;
+            keyframeBytes = 0;
+            for (int i = 0; i < keyframes.size(); i += 2) {
+                keyframes.set(kept++, keyframes.get(i));
+                keyframeBytes += getBytes(keyframes.get(i));
+            }
+            keyframes.subList(kept, keyframes.size()).clear();
+            keyframeInterval *= 2;
+        }
+    }
+    
+    /**
+     * Works out roughly how much memory a keyframe takes
+     * @param state the keyframe
+     * @return the size of its arrays in bytes
+     */
+    private static long getBytes(GameState state) {
+        return state.body.length * 8L + (state.freeCells != null ? state.freeCells.length * 4L : 0);
+    }
+    
+    /**
+     * Plays the rest of the replay as fast as possible
+     */
+    public void playToEnd() {
+        while (tick < totalTicks) {
+            step();
+        }
+    }
+    
+    /**
+     * Moves playback to the specified tick, starting from the nearest keyframe
+     * before it if that is closer than the current tick
+     * @param target the tick to move to, clamped to the length of the replay
+     */
+    public void seek(long target) {
+        target = Math.max(0, Math.min(target, totalTicks));
+        int keyframe = (int) Math.min(target / keyframeInterval, keyframes.size() - 1);
+        long keyframeTick = (long) keyframe * keyframeInterval;
+        if (target < tick || keyframeTick > tick) {
+            engine.restoreState(keyframes.get(keyframe));
+            tick = keyframeTick;
+            nextEvent = firstEventFrom(tick);
+        }
+        while (tick < target) {
+            step();
+        }
+    }
+    
+    /**
+     * Finds the first turn made on or after a tick
+     * @param fromTick the tick to search from
+     * @return the index of the turn, or the number of turns if there are none
+     */
+    private int firstEventFrom(long fromTick) {
+        int index = Arrays.binarySearch(eventTicks, 0, eventCount, fromTick);
+        return index >= 0 ? index : -index - 1;
+    }
+    
+    /**
+     * Gets the game being played back, which is only valid until the next
+     * seek
+     * @return the game
+     */
+    public Game getGame() {
+        return engine;
+    }
+    
+    /**
+     * Gets the number of ticks that have been played
+     * @return the current tick
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Gets the number of ticks in the replay
+     * @return the length of the replay in ticks
+     */
+    public long getTotalTicks() {
+        return totalTicks;
+    }
+    
+    /**
+     * Gets the number of turns in the replay
+     * @return the number of turns
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+    
+    /**
+     * Plays a replay file from the command line as fast as possible and prints
+     * the final state of the game
+     * @param args the path of the replay file
+     * @throws IOException if the replay cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayPlayer <replay file>");
+            return;
+        }
+        ReplayPlayer player = new ReplayPlayer(Paths.get(args[0]));
+        long start = System.nanoTime();
+        player.playToEnd();
+        long elapsed = System.nanoTime() - start;
+        Game game = player.getGame();
+        System.out.println("Ticks: " + player.getTick() + " Turns: " + player.getEventCount());
+        System.out.println("Score: " + game.getScore() + " Length: " + game.getSnake().getLength());
+        System.out.printf("%.0f ticks/s%n", player.getTick() * 1e9 / Math.max(1, elapsed));
+    }
+}
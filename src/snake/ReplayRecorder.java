@@ -0,0 +1,189 @@
+package snake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a game to a replay file as it is played by sitting in front of a
+ * GameEngine and noting every tick on which the snake's direction changed.
+ * Together with the seed and starting snake in the header this is enough for
+ * a ReplayPlayer to play the game again exactly.
+ *
+ * The file starts with a fixed size header followed by one variable length
+ * number per turn holding the ticks since the previous turn shifted left by
+ * two with the new direction in the bottom two bits. The total number of ticks
+ * is filled in when the recorder is closed.
+ * @author Ashley Allen
+ */
+public class ReplayRecorder implements Game, Closeable {
+    static final int MAGIC = 0x534E4B52;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 42;
+    static final int TOTAL_TICKS_OFFSET = 34;
+    
+    private static final int BUFFER_SIZE = 8192;
+    //The most bytes a single turn can take up
+    private static final int MAX_EVENT_SIZE = 10;
+    
+    private final GameEngine engine;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    
+    private long ticks = 0;
+    private long lastEventTick = 0;
+    private Direction lastDirection;
+    
+    /**
+     * Creates a new ReplayRecorder and writes the header of the replay
+     * @param engine the game to record, which must not have been stepped yet
+     * @param file the file to write the replay to, which is replaced if it
+     * already exists
+     * @throws IOException if the file cannot be written
+     */
+    public ReplayRecorder(GameEngine engine, Path file) throws IOException {
+        this.engine = engine;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.lastDirection = engine.getSnake().getDirection();
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(engine.getSeed());
+        buffer.putInt(engine.getGridWidth());
+        buffer.putInt(engine.getGridHeight());
+        buffer.putInt(engine.getStartX());
+        buffer.putInt(engine.getStartY());
+        buffer.putInt(engine.getStartLength());
+        buffer.put((byte) engine.getStartDirection().ordinal());
+        //Not known until the recording is closed
+        buffer.putLong(-1);
+    }
+    
+    /**
+     * Records a turn if the snake's direction has changed since the last tick
+     * and then advances the game
+     * @return what happened to the snake during the tick
+     * @throws UncheckedIOException if the replay cannot be written
+     */
+    @Override
+    public StepResult step() {
+        Direction dir = engine.getSnake().getDirection();
+        if (dir != lastDirection) {
+            try {
+                writeEvent(ticks - lastEventTick, dir);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            lastEventTick = ticks;
+        }
+        ticks++;
+        StepResult result = engine.step();
+        //A new game starts the snake moving in its starting direction again
+        lastDirection = engine.getSnake().getDirection();
+        return result;
+    }
+    
+    /**
+     * Writes a turn to the buffer as a variable length number, seven bits at
+     * a time with the top bit of each byte set if more bytes follow
+     * @param delta the number of ticks since the previous turn
+     * @param dir the direction turned in
+     * @throws IOException if the buffer needed flushing and could not be
+     */
+    private void writeEvent(long delta, Direction dir) throws IOException {
+        if (buffer.remaining() < MAX_EVENT_SIZE) {
+            flush();
+        }
+        long value = (delta << 2) | dir.ordinal();
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    
+    /**
+     * Writes everything in the buffer to the file
+     * @throws IOException if the file cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    /**
+     * Flushes the remaining turns, fills in the total number of ticks in the
+     * header and closes the file
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+            ByteBuffer total = ByteBuffer.allocate(Long.BYTES);
+            total.putLong(ticks).flip();
+            while (total.hasRemaining()) {
+                channel.write(total, TOTAL_TICKS_OFFSET + total.position());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Gets the number of ticks recorded so far
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+    
+    @Override
+    public void changeDirection(Direction dir) {
+        engine.changeDirection(dir);
+    }
+    
+    @Override
+    public Snake getSnake() {
+        return engine.getSnake();
+    }
+    
+    @Override
+    public Coordinates getApple() {
+        return engine.getApple();
+    }
+    
+    @Override
+    public long getApplesSpawned() {
+        return engine.getApplesSpawned();
+    }
+    
+    @Override
+    public long getGameSeed() {
+        return engine.getGameSeed();
+    }
+    
+    @Override
+    public int getScore() {
+        return engine.getScore();
+    }
+    
+    @Override
+    public int getGridWidth() {
+        return engine.getGridWidth();
+    }
+    
+    @Override
+    public int getGridHeight() {
+        return engine.getGridHeight();
+    }
+}
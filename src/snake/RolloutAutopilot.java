@@ -0,0 +1,301 @@
+package snake;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An Autopilot that looks ahead by playing many short random games, called
+ * rollouts, from each move the snake could make and taking the move whose
+ * rollouts went best on average. A rollout is worth half a point for each
+ * apple eaten and two points if the snake is still alive at the end, or if it
+ * dies the fraction of the rollout it survived, so moves into dead ends that
+ * a shortest path would take score badly once the snake is long. Rollouts
+ * place apples at random rather than where the game will really put them, so
+ * the autopilot does not see the future.
+ *
+ * Rollouts are played in batches in parallel on the common fork join pool
+ * until the time budget for the tick runs out or enough have been played,
+ * with every task checking the time before each rollout so a batch does not
+ * run far past the budget. Each task plays its rollouts on its own copy of
+ * the game, kept between ticks and refreshed with GameEngine.copyFrom, which
+ * reuses the copy's snake body. A rollout that ends the game starts the next
+ * one with the same snake, so a rollout allocates nothing except apples on
+ * grids too large to cache their Coordinates. The copies keep no set of free
+ * cells and place apples by picking cells at random, so refreshing one takes
+ * time that depends on the snake rather than the grid.
+ * Because of the time budget the moves chosen depend on how fast the machine
+ * is.
+ * @author Ashley Allen
+ */
+public class RolloutAutopilot implements Autopilot {
+    //Well inside the 50 ms between ticks at the default speed, leaving time
+    //for the rest of the tick
+    public static final long DEFAULT_BUDGET_NANOS = 10_000_000;
+    public static final int DEFAULT_MAX_ROLLOUTS = 4096;
+    
+    private static final int ROLLOUTS_PER_TASK = 16;
+    //The number of moves between checks of the time during a rollout, which
+    //on a large grid can be long enough to run well past the budget
+    private static final int MOVES_PER_TIME_CHECK = 256;
+    private static final double APPLE_VALUE = 0.5;
+    private static final double SURVIVAL_VALUE = 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    private final int gridWidth, gridHeight;
+    private final long budgetNanos;
+    private final int maxRollouts;
+    //The number of moves in each rollout
+    private final int depth;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    
+    //The game being played, copied once per tick for every rollout to start
+    //from
+    private final GameEngine root;
+    
+    //A copy of the game and a random number generator for each task of a
+    //batch, the value of each rollout in the batch and the number of
+    //rollouts each task played before the time ran out
+    private final GameEngine[] copies;
+    private final GameRandom[] randoms;
+    private final double[] values;
+    private final int[] finished;
+    
+    //The moves being compared this tick and the rollouts played so far, which
+    //the tasks read to work out which move each of their rollouts starts with
+    private final Direction[] candidates = new Direction[3];
+    private int candidateCount;
+    private int played;
+    private long deadline;
+    private final double[] totals = new double[3];
+    private final int[] counts = new int[3];
+    
+    private long rollouts = 0;
+    
+    /**
+     * Creates a new RolloutAutopilot with the default time budget
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     */
+    public RolloutAutopilot(int gridWidth, int gridHeight) {
+        this(gridWidth, gridHeight, DEFAULT_BUDGET_NANOS, DEFAULT_MAX_ROLLOUTS);
+    }
+    
+    /**
+     * Creates a new RolloutAutopilot
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @param budgetNanos how long to spend on rollouts each tick
+     * @param maxRollouts the most rollouts to play each tick, even if there
+     * is time left
+     */
+    public RolloutAutopilot(int gridWidth, int gridHeight, long budgetNanos, int maxRollouts) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.budgetNanos = budgetNanos;
+        this.maxRollouts = maxRollouts;
+        this.depth = gridWidth + gridHeight;
+        this.root = createCopy(gridWidth, gridHeight);
+        
+        //Enough tasks to keep every thread of the pool busy with some left
+        //over for those that finish early
+        int tasks = 2 * pool.getParallelism();
+        copies = new GameEngine[tasks];
+        randoms = new GameRandom[tasks];
+        for (int i = 0; i < tasks; i++) {
+            copies[i] = createCopy(gridWidth, gridHeight);
+            randoms[i] = new GameRandom(i);
+        }
+        values = new double[tasks * ROLLOUTS_PER_TASK];
+        finished = new int[tasks];
+    }
+    
+    /**
+     * Creates a game to copy the game being played into, without a set of
+     * free cells since copying one would take time for every cell of the grid
+     * @param gridWidth the width of the game grid
+     * @param gridHeight the height of the game grid
+     * @return the game
+     */
+    private static GameEngine createCopy(int gridWidth, int gridHeight) {
+        return new GameEngine(gridWidth, gridHeight, 0, gridWidth / 2, gridHeight / 2,
+                GameEngine.DEFAULT_START_LENGTH, GameEngine.DEFAULT_START_DIRECTION, false);
+    }
+    
+    @Override
+    public Direction nextDirection(Game game) {
+        root.copyPosition(game);
+        Snake snake = root.getSnake();
+        
+        //Only moves that do not run straight into something are worth trying
+        candidateCount = 0;
+        for (Direction dir : DIRECTIONS) {
+            if (dir != snake.getDirection().opposite() && isFree(root, dir)) {
+                candidates[candidateCount++] = dir;
+            }
+        }
+        if (candidateCount == 0) {
+            return snake.getDirection();
+        } else if (candidateCount == 1) {
+            return candidates[0];
+        }
+        
+        for (int i = 0; i < candidateCount; i++) {
+            totals[i] = 0;
+            counts[i] = 0;
+        }
+        deadline = System.nanoTime() + budgetNanos;
+        played = 0;
+        do {
+            pool.invoke(new RolloutTask(0, copies.length));
+            int batch = 0;
+            for (int task = 0; task < copies.length; task++) {
+                for (int i = task * ROLLOUTS_PER_TASK; i < task * ROLLOUTS_PER_TASK + finished[task]; i++) {
+                    int candidate = (played + i) % candidateCount;
+                    totals[candidate] += values[i];
+                    counts[candidate]++;
+                }
+                batch += finished[task];
+            }
+            played += batch;
+        } while (played < maxRollouts && System.nanoTime() < deadline);
+        rollouts += played;
+        
+        int best = 0;
+        for (int i = 1; i < candidateCount; i++) {
+            if (totals[i] / counts[i] > totals[best] / counts[best]) {
+                best = i;
+            }
+        }
+        return candidates[best];
+    }
+    
+    /**
+     * Plays a rollout from the game being played, starting with the specified
+     * move and then moving at random
+     * @param copy the copy of the game to play the rollout on
+     * @param random the random number generator for the moves and apples
+     * @param first the first move
+     * @param mayStop true to give up on the rollout if the time runs out
+     * @return the value of the rollout, or NaN if it was given up on
+     */
+    private double rollout(GameEngine copy, GameRandom random, Direction first, boolean mayStop) {
+        copy.copyFrom(root);
+        copy.reseed(random.nextLong());
+        copy.changeDirection(first);
+        int apples = 0;
+        for (int step = 0; step < depth; step++) {
+            if (step > 0) {
+                if (mayStop && step % MOVES_PER_TIME_CHECK == 0 && System.nanoTime() >= deadline) {
+                    return Double.NaN;
+                }
+                copy.changeDirection(randomMove(copy, random));
+            }
+            StepResult result = copy.step();
+            if (result == StepResult.DIED) {
+                return apples * APPLE_VALUE + (double) step / depth;
+            } else if (result == StepResult.WON) {
+                return (apples + 1) * APPLE_VALUE + SURVIVAL_VALUE;
+            } else if (result == StepResult.ATE_APPLE) {
+                apples++;
+            }
+        }
+        return apples * APPLE_VALUE + SURVIVAL_VALUE;
+    }
+    
+    /**
+     * Picks a move for a rollout. Half the time the free move closest to the
+     * apple is taken and otherwise any free move, so rollouts eat apples
+     * often enough to tell moves apart without all following the same path.
+     * @param game the copy of the game the rollout is played on
+     * @param random the random number generator for the moves
+     * @return the move, or the current direction if every move is blocked
+     */
+    private Direction randomMove(GameEngine game, GameRandom random) {
+        Snake snake = game.getSnake();
+        Coordinates apple = game.getApple();
+        boolean greedy = random.nextBoolean();
+        Direction chosen = snake.getDirection();
+        int bestDistance = Integer.MAX_VALUE;
+        int free = 0;
+        for (Direction dir : DIRECTIONS) {
+            if (dir == snake.getDirection().opposite() || !isFree(game, dir)) {
+                continue;
+            }
+            free++;
+            if (greedy) {
+                int distance = Math.abs(apple.getX() - snake.getBodyX(0) - dir.getDx()) + Math.abs(apple.getY() - snake.getBodyY(0) - dir.getDy());
+                if (distance < bestDistance) {
+                    chosen = dir;
+                    bestDistance = distance;
+                }
+            } else if (random.nextInt(free) == 0) {
+                //Keeps each free move equally likely without a list of them
+                chosen = dir;
+            }
+        }
+        return chosen;
+    }
+    
+    /**
+     * Checks whether the cell next to the snake's head in a direction is
+     * inside the grid and not part of the snake
+     * @param game the game
+     * @param dir the direction
+     * @return true if the snake can move into the cell
+     */
+    private boolean isFree(GameEngine game, Direction dir) {
+        Snake snake = game.getSnake();
+        int x = snake.getBodyX(0) + dir.getDx();
+        int y = snake.getBodyY(0) + dir.getDy();
+        return x >= 0 && x < gridWidth && y >= 0 && y < gridHeight && !snake.isOccupied(x, y);
+    }
+    
+    /**
+     * Gets the total number of rollouts played
+     * @return the number of rollouts
+     */
+    public long getRollouts() {
+        return rollouts;
+    }
+    
+    /**
+     * Plays the rollouts of a range of tasks of a batch, splitting the range
+     * in half until it is a single task
+     */
+    @SuppressWarnings("serial")
+    private class RolloutTask extends RecursiveAction {
+        private final int from, to;
+        
+        RolloutTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RolloutTask(from, mid), new RolloutTask(mid, to));
+                return;
+            }
+            GameEngine copy = copies[from];
+            GameRandom random = randoms[from];
+            int start = from * ROLLOUTS_PER_TASK;
+            int i = start;
+            for (; i < to * ROLLOUTS_PER_TASK; i++) {
+                //The first rollout of each move is always played so that
+                //every move has a value however little time there is
+                boolean mayStop = played + i >= candidateCount;
+                if (mayStop && System.nanoTime() >= deadline) {
+                    break;
+                }
+                double value = rollout(copy, random, candidates[(played + i) % candidateCount], mayStop);
+                if (Double.isNaN(value)) {
+                    break;
+                }
+                values[i] = value;
+            }
+            finished[from] = i - start;
+        }
+    }
+}
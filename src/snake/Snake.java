@@ -1,17 +1,25 @@
 package snake;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Stores the position of each cell of the snake and performs calculations such
  * as moving the snake
  * @author Ashley Allen
  */
 public class Snake {
-    private final List<Coordinates> snake = new ArrayList<>();
+    //The body is stored as packed coordinates in a circular buffer whose
+    //capacity is always a power of two. The head is at index head and the
+    //tail is length - 1 slots after it.
+    private long[] body = new long[16];
+    private int head = 0;
+    private int length = 0;
+    
+    //One bit per grid cell that is set when the snake occupies that cell, or
+    //null if whatever owns the snake keeps track of the cells itself
+    private final OccupancyGrid occupied;
+    private final CoordinatesCache cache;
     
     private boolean shouldGrow = false;
+    private boolean hitItself = false;
     private Direction direction;
     
     /**
@@ -20,8 +28,28 @@ public class Snake {
      * @param startPos the starting position for the snake
      * @param startLen the starting length for the snake
      * @param startDir the starting direction of the snake
+     * @param gridWidth the width of the grid the snake moves on
+     * @param gridHeight the height of the grid the snake moves on
+     */
+    public Snake(Coordinates startPos, int startLen, Direction startDir, int gridWidth, int gridHeight) {
+        this(startPos, startLen, startDir, gridWidth, gridHeight, true);
+    }
+    
+    /**
+     * Creates a snake that may leave the cells it covers to be kept track of
+     * by whatever owns it, as in an Arena where every snake shares one grid.
+     * Such a snake never notices running into itself and checking whether it
+     * covers a cell searches its body.
+     * @param startPos the starting position for the snake
+     * @param startLen the starting length for the snake
+     * @param startDir the starting direction of the snake
+     * @param gridWidth the width of the grid the snake moves on
+     * @param gridHeight the height of the grid the snake moves on
+     * @param trackCells false to not keep an occupancy grid
      */
-    public Snake(Coordinates startPos, int startLen, Direction startDir) {
+    Snake(Coordinates startPos, int startLen, Direction startDir, int gridWidth, int gridHeight, boolean trackCells) {
+        this.occupied = trackCells ? new OccupancyGrid(gridWidth, gridHeight) : null;
+        this.cache = CoordinatesCache.forGrid(gridWidth, gridHeight);
         create(startPos, startLen, startDir);
     }
     
@@ -34,69 +62,209 @@ public class Snake {
      */
     private void create(Coordinates pos, int len, Direction dir) {
         this.direction = dir;
+        //Lay the body out behind the head, opposite to the direction of travel
+        long cell = pos.packed();
         for (int i = 0; i < len; i++) {
-            switch (dir) {
-                case NORTH:
-                    grow(pos.add(0, i));
-                    break;
-                case EAST:
-                    grow(pos.add(-i, 0));
-                    break;
-                case SOUTH:
-                    grow(pos.add(0, -i));
-                    break;
-                case WEST:
-                    grow(pos.add(i, 0));
-                    break;
-            }
+            grow(cell);
+            setOccupied(cell, true);
+            cell = Coordinates.step(cell, dir.opposite());
+        }
+    }
+    
+    /**
+     * Makes this snake an exact copy of another snake on a grid of the same
+     * size, reusing this snake's buffers where possible
+     * @param other the snake to copy
+     */
+    public void copyFrom(Snake other) {
+        if ((occupied == null) != (other.occupied == null)) {
+            throw new IllegalArgumentException("Cannot copy between a snake that keeps track of its cells and one that does not");
+        }
+        //Keep the body buffer if it is large enough, copying the other body
+        //unwrapped to the start of it
+        if (body.length < other.length) {
+            body = new long[Integer.highestOneBit(other.length - 1) << 1];
+        }
+        int first = Math.min(other.length, other.body.length - other.head);
+        System.arraycopy(other.body, other.head, body, 0, first);
+        System.arraycopy(other.body, 0, body, first, other.length - first);
+        if (occupied != null) {
+            occupied.copyFrom(other.occupied);
+        }
+        head = 0;
+        length = other.length;
+        shouldGrow = other.shouldGrow;
+        hitItself = other.hitItself;
+        direction = other.direction;
+    }
+    
+    /**
+     * Replaces the snake with one saved earlier
+     * @param cells the packed position of every body part, head first
+     * @param len the length of the snake
+     * @param dir the direction the snake is moving in
+     * @param growing true if the snake has eaten an apple and will grow on
+     * its next move
+     */
+    public void restore(long[] cells, int len, Direction dir, boolean growing) {
+        if (len < 1) {
+            throw new IllegalArgumentException("A snake must have at least one part but had " + len);
+        }
+        //Clear the old body one cell at a time, which is cheaper than
+        //clearing the whole grid
+        for (int i = 0; i < length; i++) {
+            setOccupied(body[(head + i) & (body.length - 1)], false);
+        }
+        if (len > body.length) {
+            body = new long[Integer.highestOneBit(len - 1) << 1];
+        }
+        System.arraycopy(cells, 0, body, 0, len);
+        for (int i = 0; i < len; i++) {
+            setOccupied(body[i], true);
         }
+        head = 0;
+        length = len;
+        shouldGrow = growing;
+        hitItself = false;
+        direction = dir;
     }
     
     /**
      * Move the snake in the current direction
      */
     public void move() {
-        Coordinates snakeTail = getTail();
-        
-        //Starting from the end of the snake set each cell to the position of the
-        //next cell except for the head
-        for (int i = snake.size() - 1; i > 0; i--) {
-            snake.set(i, getBody(i - 1));
-        }
+        long snakeTail = body[tailIndex()];
         
         //For the head of the snake calculate its new position based on the
         //current direction
-        Coordinates snakeHead = getHead();
-        switch (direction) {
-            case NORTH:
-                snakeHead = snakeHead.add(0, -1);
-                break;
-            case EAST:
-                snakeHead = snakeHead.add(1, 0);
-                break;
-            case SOUTH:
-                snakeHead = snakeHead.add(0, 1);
-                break;
-            case WEST:
-                snakeHead = snakeHead.add(-1, 0);
-                break;
-        }
-        snake.set(0, snakeHead);
+        long snakeHead = Coordinates.step(body[head], direction);
         
-        //If the snake has eaten an apple append the cell that previously was
-        //the tail to the end of the snake
+        //If the snake has eaten an apple keep the cell that previously was
+        //the tail, otherwise that cell is now free and its slot can be reused
         if (shouldGrow) {
-            grow(snakeTail);
+            ensureCapacity(length + 1);
+            length++;
             shouldGrow = false;
+        } else {
+            setOccupied(snakeTail, false);
+        }
+        
+        //Rather than shifting every cell along, step the head index back one
+        //slot and write the new head there
+        head = (head - 1) & (body.length - 1);
+        body[head] = snakeHead;
+        
+        //The head has run into the body if its new cell is already occupied
+        if (occupied != null) {
+            hitItself = occupied.get(Coordinates.x(snakeHead), Coordinates.y(snakeHead));
+            setOccupied(snakeHead, true);
+        }
+    }
+    
+    /**
+     * Starts the snake again at the specified position with the specified
+     * length in the specified direction, reusing its buffers
+     * @param pos the position of the head
+     * @param len the length of the snake
+     * @param dir the direction the snake moves in
+     */
+    public void reset(Coordinates pos, int len, Direction dir) {
+        for (int i = 0; i < length; i++) {
+            setOccupied(body[(head + i) & (body.length - 1)], false);
+        }
+        head = 0;
+        length = 0;
+        shouldGrow = false;
+        hitItself = false;
+        create(pos, len, dir);
+    }
+    
+    /**
+     * Appends a packed coordinate pair to the tail of the snake
+     * @param pos the packed position to add
+     */
+    private void grow(long pos) {
+        ensureCapacity(length + 1);
+        body[(head + length) & (body.length - 1)] = pos;
+        length++;
+    }
+    
+    /**
+     * Makes sure the body buffer can hold the specified number of cells,
+     * doubling its size and unwrapping it if necessary
+     * @param capacity the number of cells required
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= body.length) {
+            return;
+        }
+        long[] newBody = new long[Integer.highestOneBit(capacity - 1) << 1];
+        for (int i = 0; i < length; i++) {
+            newBody[i] = body[(head + i) & (body.length - 1)];
         }
+        body = newBody;
+        head = 0;
+    }
+    
+    /**
+     * Gets the buffer index of the snake's tail
+     * @return the index of the tail in the body buffer
+     */
+    private int tailIndex() {
+        return (head + length - 1) & (body.length - 1);
     }
     
     /**
-     * Adds a coordinate pair at the specified position
-     * @param pos the position to add the coordinates
+     * Sets or clears the occupancy bit for the specified packed position.
+     * Positions outside the grid are ignored.
+     * @param pos the packed position to update
+     * @param value true if the position is now occupied by the snake
      */
-    private void grow(Coordinates pos) {
-        snake.add(pos);
+    private void setOccupied(long pos, boolean value) {
+        if (occupied != null) {
+            occupied.set(Coordinates.x(pos), Coordinates.y(pos), value);
+        }
+    }
+    
+    /**
+     * Checks whether any part of the snake occupies the specified cell in
+     * constant time, or by searching the body if the snake does not keep
+     * track of its cells
+     * @param x the x coordinate of the cell
+     * @param y the y coordinate of the cell
+     * @return true if the snake occupies the cell, false otherwise or if the
+     * cell is outside the grid
+     */
+    public boolean isOccupied(int x, int y) {
+        if (occupied != null) {
+            return occupied.get(x, y);
+        }
+        for (int i = 0; i < length; i++) {
+            long pos = body[(head + i) & (body.length - 1)];
+            if (Coordinates.x(pos) == x && Coordinates.y(pos) == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks whether the head moved into another part of the snake during
+     * the last move
+     * @return true if the snake has run into itself
+     */
+    public boolean hasHitItself() {
+        return hitItself;
+    }
+    
+    /**
+     * Checks whether turning in the specified direction would change the
+     * direction of the snake. A snake cannot reverse into itself.
+     * @param dir the direction to turn in
+     * @return true if the turn would have an effect
+     */
+    public boolean canTurn(Direction dir) {
+        return dir != direction && dir != direction.opposite();
     }
     
     public void changeDirection(Direction dir) {
@@ -116,12 +284,20 @@ public class Snake {
         }
     }
     
+    /**
+     * Gets the direction the snake is currently moving in
+     * @return the current direction
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+    
     /**
      * Gets the position of the snake's head
      * @return the position of the snake's head
      */
     public Coordinates getHead() {
-        return snake.get(0);
+        return getBody(0);
     }
     
     /**
@@ -131,15 +307,68 @@ public class Snake {
      * @return the position of the snake's body part
      */
     public Coordinates getBody(int index) {
-        return snake.get(index);
+        return cache.get(getBodyPacked(index));
+    }
+    
+    /**
+     * Gets the position of a snake's body part packed into a long without
+     * creating a Coordinates object
+     * @param index the index of the body part
+     * @return the packed position of the body part
+     */
+    public long getBodyPacked(int index) {
+        return body[bodyIndex(index)];
+    }
+    
+    /**
+     * Gets the x coordinate of a snake's body part without creating a
+     * Coordinates object
+     * @param index the index of the body part
+     * @return the x coordinate of the body part
+     */
+    public int getBodyX(int index) {
+        return Coordinates.x(body[bodyIndex(index)]);
+    }
+    
+    /**
+     * Gets the y coordinate of a snake's body part without creating a
+     * Coordinates object
+     * @param index the index of the body part
+     * @return the y coordinate of the body part
+     */
+    public int getBodyY(int index) {
+        return Coordinates.y(body[bodyIndex(index)]);
+    }
+    
+    /**
+     * Converts a body part index into an index in the body buffer
+     * @param index the index of the body part, 0 being the head
+     * @return the index in the body buffer
+     */
+    private int bodyIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+        }
+        return (head + index) & (body.length - 1);
+    }
+    
+    /**
+     * Copies the packed position of every body part into an array, head first
+     * @param dest the array to copy into, at least as long as the snake
+     */
+    public void copyBody(long[] dest) {
+        //The body is at most two runs of the buffer either side of the wrap
+        int first = Math.min(length, body.length - head);
+        System.arraycopy(body, head, dest, 0, first);
+        System.arraycopy(body, 0, dest, first, length - first);
     }
     
     /**
      * Gets the position of the snake's tail
-     * @return the position of the snake's tail 
+     * @return the position of the snake's tail
      */
     public Coordinates getTail() {
-        return snake.get(snake.size() - 1);
+        return getBody(length - 1);
     }
     
     /**
@@ -149,11 +378,20 @@ public class Snake {
         this.shouldGrow = true;
     }
     
+    /**
+     * Checks whether the snake has eaten an apple and will grow on its next
+     * move, in which case its tail will not move
+     * @return true if the snake will grow on its next move
+     */
+    public boolean isGrowing() {
+        return shouldGrow;
+    }
+    
     /**
      * Gets the length of the snake
      * @return the length of the snake
      */
     public int getLength() {
-        return snake.size();
+        return length;
     }
 }
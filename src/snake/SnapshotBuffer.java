@@ -0,0 +1,82 @@
+package snake;
+
+/**
+ * Passes snapshots from the simulation thread to a rendering thread without
+ * locks using two buffers. The writer fills the back buffer and publishes it
+ * by making it the front, while the reader marks the front buffer as in use
+ * so the writer never overwrites a snapshot that is being drawn. If the reader
+ * is still using the back buffer the writer simply skips publishing that time.
+ * @author Ashley Allen
+ * @param <T> the type of snapshot
+ */
+public class SnapshotBuffer<T> {
+    private final Object[] buffers;
+    
+    //The index of the published buffer and of the buffer being read or -1
+    private volatile int front = 0;
+    private volatile int reading = -1;
+    
+    /**
+     * Creates a new SnapshotBuffer
+     * @param first the snapshot to publish first, which the reader gets until
+     * the writer publishes
+     * @param second the other snapshot
+     */
+    public SnapshotBuffer(T first, T second) {
+        buffers = new Object[] { first, second };
+    }
+    
+    /**
+     * Gets the buffer to write the next snapshot into. Must only be called by
+     * the writer thread.
+     * @return the back buffer, or null if the reader is still using it
+     */
+    public T beginWrite() {
+        int back = 1 - front;
+        return reading == back ? null : get(back);
+    }
+    
+    /**
+     * Publishes the buffer returned by beginWrite. Must only be called by the
+     * writer thread.
+     */
+    public void publish() {
+        front = 1 - front;
+    }
+    
+    /**
+     * Gets the most recently published snapshot and stops it being overwritten
+     * until release is called. Must only be called by the reader thread.
+     * @return the latest snapshot
+     */
+    public T acquire() {
+        while (true) {
+            int index = front;
+            reading = index;
+            //If the writer published in the meantime it may be about to write
+            //into this buffer, so try again with the new front
+            if (front == index) {
+                return get(index);
+            }
+        }
+    }
+    
+    /**
+     * Allows the snapshot returned by acquire to be overwritten again. Must
+     * only be called by the reader thread.
+     */
+    public void release() {
+        reading = -1;
+    }
+    
+    /**
+     * Gets one of the two buffers
+     * @param index the index of the buffer
+     * @return the buffer
+     */
+    @SuppressWarnings("unchecked")
+    private T get(int index) {
+        //Only ever holds the two snapshots given to the constructor
+        return (T) buffers[index];
+    }
+}
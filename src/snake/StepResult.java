@@ -0,0 +1,16 @@
+package snake;
+
+/**
+ * The outcome of advancing a game by a single tick
+ * @author Ashley Allen
+ */
+public enum StepResult {
+    /** The snake moved into an empty cell */
+    MOVED,
+    /** The snake ate the apple and will grow */
+    ATE_APPLE,
+    /** The snake collided and a new game was started */
+    DIED,
+    /** The snake filled the whole grid and a new game was started */
+    WON
+}